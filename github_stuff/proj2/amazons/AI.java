@@ -1,8 +1,9 @@
 package amazons;
 
-import java.util.Iterator;
-
-import static java.lang.Math.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static amazons.Piece.*;
 
@@ -13,21 +14,6 @@ import static amazons.Piece.*;
  */
 class AI extends Player {
 
-    /**
-     * A position magnitude indicating a win (for white if positive, black
-     * if negative).
-     */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
-    /**
-     * A magnitude greater than a normal value.
-     */
-    private static final int INFTY = Integer.MAX_VALUE;
-
-    /**
-     * Value/score for the score for a minimax tree.
-     */
-    private int score;
-
     /**
      * A new AI with no piece or controller (intended to produce
      * a template).
@@ -55,147 +41,311 @@ class AI extends Player {
         return move.toString();
     }
 
+    @Override
+    String evalCacheStats() {
+        List<EvalCache> caches = new ArrayList<>();
+        for (Searcher searcher : _searchers) {
+            if (searcher != null && searcher.evalCache() != null) {
+                caches.add(searcher.evalCache());
+            }
+        }
+        if (_parallel != null) {
+            for (EvalCache cache : _parallel.evalCaches()) {
+                caches.add(cache);
+            }
+        }
+        return caches.isEmpty() ? null : EvalCache.summary(caches);
+    }
+
     /**
      * Return a move for me from the current position, assuming there
-     * is a move.
+     * is a move.  Plays positions that the endgame solver or a proof
+     * search settles in my favor without searching further, and avoids
+     * moves that a proof search has shown to lose.
      */
     private Move findMove() {
+        long deadline = System.currentTimeMillis() + _controller.timeLimit();
         Board b = new Board(board());
-        if (_myPiece == WHITE) {
-            if (b.numMoves() < 5) {
-                moveRandom(b);
-            } else {
-                findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
-            }
+        if (b.numMoves() < 5) {
+            return Move.mv(moveRandom(b));
+        }
+        if (_table == null) {
+            _table = new TranspositionTable(TABLE_BITS);
+            _solver = new EndgameSolver(SOLVER_BUDGET, SOLVER_TABLE_BITS);
+            _proof = new ProofSearch(PROOF_TABLE_BITS);
+            _boardSize = Board.size();
+        } else if (_boardSize != Board.size()) {
+            forgetPositions();
+        }
+        if (_solver.solve(b) && _solver.bestMove() != Searcher.NO_MOVE) {
+            return Move.mv(_solver.bestMove());
+        }
+        boolean proving = b.numEmpty() <= PROOF_EMPTY;
+        int proof = proving ? _proof.solve(b, PROOF_BUDGET)
+            : ProofSearch.UNKNOWN;
+        if (proof == ProofSearch.WIN) {
+            return Move.mv(_proof.bestMove());
+        }
+        useEvaluator(_controller.evaluator(_myPiece),
+                     _controller.evalCacheBits());
+        int depth = _controller.searchDepth();
+        int move;
+        if (depth > 0) {
+            move = search(b, _controller.threads(), depth);
         } else {
-            if (b.numMoves() < 5) {
-                moveRandom(b);
-            } else {
-                findMove(b, maxDepth(b), true, -1, -INFTY, INFTY);
+            move = search(b, _controller.threads(), deadline);
+        }
+        if (proving && proof == ProofSearch.UNKNOWN
+            && _proof.provenLoss(b, move)
+            && _proof.bestMove() != Searcher.NO_MOVE) {
+            move = _proof.bestMove();
+        }
+        return Move.mv(move);
+    }
+
+    /**
+     * Return the best move (in packed form) for the player to move on
+     * BOARD found by a search to exactly DEPTH using THREADS threads.  The
+     * result depends only on BOARD and DEPTH: it is the move that a
+     * serial search would find (see Searcher.fixedDepthMove), however
+     * many threads are used.
+     */
+    private int search(Board board, int threads, int depth) {
+        int sense = board.turn() == WHITE ? 1 : -1;
+        _table.clear();
+        if (threads == 1) {
+            return searchers(1)[0].fixedDepthMove(board, sense, depth);
+        }
+        if (_parallel == null || _parallel.threads() != threads) {
+            if (_parallel != null) {
+                _parallel.shutdown();
             }
+            _parallel = new ParallelSearch(_table, threads, _evaluator,
+                                           _cacheBits,
+                                           _controller.searchOptions());
         }
-        return _lastFoundMove;
+        return _parallel.findMove(board, sense, depth);
     }
 
     /**
-     * The move found by the last call to one of the ...FindMove methods
-     * below.
+     * Return the best move (in packed form) that THREADS of my Searchers
+     * find for the player to move on BOARD before the time (as for
+     * System.currentTimeMillis) reaches DEADLINE (see deepen).
      */
-    private Move _lastFoundMove;
+    private int search(Board board, int threads, long deadline) {
+        return deepen(searchers(threads), _stop, board, deadline);
+    }
 
     /**
-     * Find a move from position BOARD and return its value, recording
-     * the move found in _lastFoundMove iff SAVEMOVE. The move
-     * should have maximal value or have value > BETA if SENSE==1,
-     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _lastMoveFound.
+     * Return the best move (in packed form) that SEARCHERS, each in its
+     * own thread, find for the player to move on BOARD before the time
+     * (as for System.currentTimeMillis) reaches DEADLINE.  All of
+     * SEARCHERS must share one TranspositionTable and the stop flag STOP.
+     * This thread runs the first Searcher, which decides when the search
+     * ends.  The others search copies of BOARD, at staggered depths, so
+     * that each fills in the table ahead of the others; they are stopped
+     * through STOP, and have finished when this method returns.  The
+     * result is the move from the Searcher that completed the deepest
+     * search, preferring the first Searcher's.  Leaves BOARD as it found
+     * it.
      */
-    private int findMove(Board board, int depth, boolean saveMove, int sense,
-                         int alpha, int beta) {
-        if (depth == 0 || board.winner() != null) {
-            return staticScore(board);
+    static int deepen(Searcher[] searchers, AtomicBoolean stop,
+                      Board board, long deadline) {
+        int threads = searchers.length;
+        int sense = board.turn() == WHITE ? 1 : -1;
+        stop.set(false);
+        Thread[] helpers = new Thread[threads - 1];
+        for (int i = 1; i < threads; i += 1) {
+            Searcher helper = searchers[i];
+            Board copy = new Board(board);
+            int skew = i % 2;
+            helpers[i - 1] =
+                new Thread(() -> helper.deepen(copy, sense, deadline, skew),
+                           HELPER_NAME + i);
+            helpers[i - 1].setDaemon(true);
+            helpers[i - 1].start();
         }
-        if (sense == 1) {
-            int maxEval = -INFTY;
-            Iterator<Move> iter = board.legalMoves();
-            while (iter.hasNext()) {
-                Move movement = iter.next();
-                if (saveMove && (_lastFoundMove == null)) {
-                    _lastFoundMove = movement;
-                }
-                Board b2 = new Board(board);
-                int eval = findMove(b2, depth - 1, false, -sense, alpha, beta);
-                maxEval = Math.max(maxEval, eval);
-                if (maxEval == eval) {
-                    if (saveMove) {
-                        _lastFoundMove = movement;
-                    }
-                }
-                alpha = Math.max(alpha, eval);
-                if (beta <= alpha) {
-                    break;
+        searchers[0].deepen(board, sense, deadline, 0);
+        stop.set(true);
+        for (Thread helper : helpers) {
+            while (helper.isAlive()) {
+                try {
+                    helper.join();
+                } catch (InterruptedException excp) {
+                    /* Ignore: we must wait for the helpers. */
                 }
             }
-            return maxEval;
-        } else {
-            int minEval = INFTY;
-            Iterator<Move> iter = board.legalMoves();
-            while (iter.hasNext()) {
-                Move movement = iter.next();
-                if (saveMove && (_lastFoundMove == null)) {
-                    _lastFoundMove = movement;
-                }
-                Board b2 = new Board(board);
-                int eval = findMove(b2, depth - 1, false, -sense, alpha, beta);
-                minEval = Math.min(minEval, eval);
-                if (minEval == eval) {
-                    if (saveMove) {
-                        _lastFoundMove = movement;
-                    }
-                }
-                beta = Math.min(beta, eval);
-                if (beta <= alpha) {
-                    break;
-                }
+        }
+        Searcher best = searchers[0];
+        for (Searcher searcher : searchers) {
+            if (searcher.completedDepth() > best.completedDepth()
+                && searcher.bestMove() != Searcher.NO_MOVE) {
+                best = searcher;
             }
-            return minEval;
         }
+        return best.bestMove();
     }
 
     /**
-     * Moves a random place.
-     * @param board Is the board.
+     * The prefix of the names of the helper threads of deepen.
      */
-    private void moveRandom(Board board) {
-        Iterator<Move> iter = board.legalMoves();
-        Move mvmt = iter.next();
-        int rand = _controller.randInt(100);
-        for (int i = 0; i < rand; i += 1) {
-            if (iter.hasNext()) {
-                mvmt = iter.next();
-            }
-        }
-        _lastFoundMove = mvmt;
-    }
+    static final String HELPER_NAME = "amazons-search-helper-";
 
     /**
-     * Return a heuristically determined maximum search depth
-     * based on characteristics of BOARD.
+     * Forget what I have learned about positions on boards of size
+     * _boardSize, and note that the board is now of size Board.size().
+     * Board.key gives a square the same keys whatever the size of the
+     * board, so otherwise my tables and evaluation caches would return
+     * values for positions on the old size as if they were on the new.
+     * My Searchers and parallel search, which hold the caches, are
+     * discarded by the next call to useEvaluator.  _solver needs no
+     * clearing: its entries are good only for the cluster being solved
+     * when they were stored (see EndgameSolver._stamp).
      */
-    private int maxDepth(Board board) {
-        int N = board.numMoves();
-        if (N < 5) {
-            return 1;
-        }
-        return (int) (log(N) / log(3));
+    private void forgetPositions() {
+        _boardSize = Board.size();
+        _table.clear();
+        _proof.clear();
+        _evaluator = null;
     }
 
-
     /**
-     * Return a heuristic value for BOARD.
+     * Have my searches use evaluators made from the template EVALUATOR,
+     * each caching its values in an EvalCache with 2**CACHEBITS entries,
+     * or in none if CACHEBITS is 0.  If that is a change, discards my
+     * Searchers and my parallel search, which hold the evaluators and
+     * caches, and if the evaluator changes, the contents of _table, which
+     * also depend on it.
      */
-    private int staticScore(Board board) {
-        Piece winner = board.winner();
-        if (winner == BLACK) {
-            return -WINNING_VALUE;
-        } else if (winner == WHITE) {
-            return WINNING_VALUE;
+    private void useEvaluator(Evaluator evaluator, int cacheBits) {
+        boolean sameEvaluator = _evaluator != null
+            && _evaluator.name().equals(evaluator.name());
+        if (sameEvaluator && cacheBits == _cacheBits) {
+            return;
+        }
+        _evaluator = evaluator;
+        _cacheBits = cacheBits;
+        _searchers = new Searcher[0];
+        if (_parallel != null) {
+            _parallel.shutdown();
+            _parallel = null;
         }
-        Iterator<Move> whiteMoves = board.legalMoves(WHITE);
-        int whiteScore = 0;
-        while (whiteMoves.hasNext()) {
-            Move whiteMovement = whiteMoves.next();
-            whiteScore += 1;
+        if (!sameEvaluator) {
+            _table.clear();
         }
-        Iterator<Move> blackMoves = board.legalMoves(BLACK);
-        int blackScore = 0;
-        while (blackMoves.hasNext()) {
-            Move blackMovement = blackMoves.next();
-            blackScore += 1;
+    }
+
+    /**
+     * Return THREADS Searchers using _table, reusing those I already
+     * have.
+     */
+    private Searcher[] searchers(int threads) {
+        if (_searchers.length != threads) {
+            _searchers = Arrays.copyOf(_searchers, threads);
+            for (int i = 0; i < threads; i += 1) {
+                if (_searchers[i] == null) {
+                    _searchers[i] =
+                        new Searcher(_table, _stop, _evaluator.create(),
+                                     _cacheBits == 0 ? null
+                                     : new EvalCache(_cacheBits),
+                                     _controller.searchOptions());
+                }
+            }
         }
-        return whiteScore - blackScore;
+        return _searchers;
     }
 
+    /**
+     * Log2 of the number of entries in _table.
+     */
+    private static final int TABLE_BITS = 20;
+
+    /**
+     * Results of previous searches, shared by my Searchers and kept for
+     * the whole game, or null if I have not yet searched.
+     */
+    private TranspositionTable _table;
+
+    /**
+     * The size of the board on which the positions in _table and _proof
+     * were played.
+     */
+    private int _boardSize;
+
+    /**
+     * My Searchers, one per thread, kept from move to move so that their
+     * move-ordering history carries over.
+     */
+    private Searcher[] _searchers = new Searcher[0];
+
+    /**
+     * The template for my Searchers' evaluators, or null if I have not
+     * yet searched on a board of the current size.
+     */
+    private Evaluator _evaluator;
+
+    /**
+     * Log2 of the number of entries in each of my Searchers' evaluation
+     * caches, or 0 if they have none.
+     */
+    private int _cacheBits;
+
+    /**
+     * My fixed-depth parallel search, or null if I have not needed one.
+     */
+    private ParallelSearch _parallel;
+
+    /**
+     * Set to tell my Searchers to stop.
+     */
+    private final AtomicBoolean _stop = new AtomicBoolean();
+
+    /**
+     * The largest number of states my endgame solver examines per move.
+     */
+    private static final int SOLVER_BUDGET = 1 << 14;
+
+    /**
+     * Log2 of the number of states my endgame solver memoizes.
+     */
+    private static final int SOLVER_TABLE_BITS = 16;
+
+    /**
+     * Plays out positions in which the sides are separated, once they are
+     * small enough to solve exactly, or null if I have not yet searched.
+     */
+    private EndgameSolver _solver;
+
+    /**
+     * Proof searches are tried once at most this many squares are empty.
+     */
+    private static final int PROOF_EMPTY = 30;
+
+    /**
+     * The largest number of positions a proof search examines per move.
+     */
+    private static final int PROOF_BUDGET = 2000;
+
+    /**
+     * Log2 of the number of entries in _proof's table.
+     */
+    private static final int PROOF_TABLE_BITS = 18;
+
+    /**
+     * Tries to prove wins and losses in the late middle game, keeping
+     * its table for the whole game, or null if I have not yet searched.
+     */
+    private ProofSearch _proof;
+
+    /**
+     * Return a random move for the player to move on BOARD, in packed
+     * form.
+     */
+    private int moveRandom(Board board) {
+        int[] moves = new int[board.maxMoves()];
+        int n = board.generateMoves(board.turn(), moves);
+        int rand = _controller.randInt(100);
+        return moves[Math.min(rand, n - 1)];
+    }
 
 }
@@ -0,0 +1,205 @@
+package amazons;
+
+/**
+ * Static utilities for bitboards: sets of Squares packed into arrays of
+ * longs, with bit I of the set held in bit (I % 64) of word I / 64.
+ * There are as many words as the current board size needs: two for the
+ * standard board.
+ * Square indices are as for Square.index, so that moving one step in
+ * a queen direction is a shift by a fixed amount (see DELTA), and
+ * queen-ray reachability can be computed for whole sets of Squares at
+ * once with shifts and masks.
+ *
+ * @author Amol Pant
+ */
+final class BitBoard {
+
+    /**
+     * Return a new, empty bitboard.
+     */
+    static long[] create() {
+        return new long[_words];
+    }
+
+    /**
+     * Return true iff square index I is in BITS.
+     */
+    static boolean contains(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Add square index I to BITS.
+     */
+    static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * Remove square index I from BITS.
+     */
+    static void clear(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+
+    /**
+     * Remove all squares from BITS.
+     */
+    static void clear(long[] bits) {
+        for (int w = 0; w < _words; w += 1) {
+            bits[w] = 0;
+        }
+    }
+
+    /**
+     * Set DEST to the contents of SRC.
+     */
+    static void copy(long[] src, long[] dest) {
+        System.arraycopy(src, 0, dest, 0, _words);
+    }
+
+    /**
+     * Return the number of squares in BITS.
+     */
+    static int count(long[] bits) {
+        int n = 0;
+        for (int w = 0; w < _words; w += 1) {
+            n += Long.bitCount(bits[w]);
+        }
+        return n;
+    }
+
+    /**
+     * Return true iff BITS is empty.
+     */
+    static boolean isEmpty(long[] bits) {
+        for (int w = 0; w < _words; w += 1) {
+            if (bits[w] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the smallest square index >= I in BITS, or -1 if there is
+     * none.
+     */
+    static int next(long[] bits, int i) {
+        int w = i >>> 6;
+        if (w >= _words) {
+            return -1;
+        }
+        long word = bits[w] & (-1L << i);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            w += 1;
+            if (w == _words) {
+                return -1;
+            }
+            word = bits[w];
+        }
+    }
+
+    /**
+     * Set RESULT to the set of squares reachable by an unblocked queen
+     * move from some square in SRC, where only the squares in EMPTY may
+     * be passed over or landed on. GEN is scratch space. GEN and RESULT
+     * must be distinct from each other and from SRC and EMPTY.
+     */
+    static void queenReach(long[] src, long[] empty, long[] gen,
+                           long[] result) {
+        clear(result);
+        for (int dir = 0; dir < DELTA.length; dir += 1) {
+            copy(src, gen);
+            int delta = DELTA[dir];
+            long[] edge = EDGE[dir];
+            boolean more = true;
+            while (more) {
+                shift(gen, delta);
+                more = false;
+                for (int w = 0; w < _words; w += 1) {
+                    gen[w] &= empty[w] & edge[w];
+                    result[w] |= gen[w];
+                    more |= gen[w] != 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Shift all squares in BITS by DELTA index positions in place,
+     * discarding those that fall off either end.  |DELTA| must be less
+     * than 64.
+     */
+    static void shift(long[] bits, int delta) {
+        if (delta > 0) {
+            int back = 64 - delta;
+            for (int w = _words - 1; w > 0; w -= 1) {
+                bits[w] = (bits[w] << delta) | (bits[w - 1] >>> back);
+            }
+            bits[0] <<= delta;
+        } else {
+            int d = -delta, back = 64 - d;
+            for (int w = 0; w < _words - 1; w += 1) {
+                bits[w] = (bits[w] >>> d) | (bits[w + 1] << back);
+            }
+            bits[_words - 1] >>>= d;
+        }
+    }
+
+    /**
+     * Recompute the bitboard geometry for boards with SIZE squares on a
+     * side.  Called by Board.setSize.
+     */
+    static void setSize(int size) {
+        int[][] dirs = {
+            {0, 1}, {1, 1}, {1, 0}, {1, -1},
+            {0, -1}, {-1, -1}, {-1, 0}, {-1, 1}
+        };
+        _words = (size * size + 63) / 64;
+        for (int dir = 0; dir < dirs.length; dir += 1) {
+            int dcol = dirs[dir][0], drow = dirs[dir][1];
+            DELTA[dir] = dcol + size * drow;
+            EDGE[dir] = create();
+            for (int i = 0; i < size * size; i += 1) {
+                int col = i % size;
+                if ((dcol == 1 && col == 0)
+                    || (dcol == -1 && col == size - 1)) {
+                    continue;
+                }
+                set(EDGE[dir], i);
+            }
+        }
+    }
+
+    /**
+     * The number of longs in a bitboard: one bit per square.
+     */
+    private static int _words;
+
+    /**
+     * DELTA[k] is the change in square index resulting from one step in
+     * queen direction k (as defined in Square.queenMove).
+     */
+    private static final int[] DELTA = new int[8];
+
+    /**
+     * EDGE[k] is a mask of the squares that may be entered by a step in
+     * direction k without wrapping around from one side of the board to
+     * the other.
+     */
+    private static final long[][] EDGE = new long[8][];
+
+    static {
+        setSize(Board.size());
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private BitBoard() {
+    }
+}
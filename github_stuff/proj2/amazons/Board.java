@@ -1,13 +1,14 @@
 package amazons;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Collections;
+import java.util.Random;
 
 import static amazons.Piece.BLACK;
 import static amazons.Piece.WHITE;
 import static amazons.Piece.SPEAR;
 import static amazons.Piece.EMPTY;
+import static amazons.Utils.error;
 
 /**
  * The state of an Amazons Game.
@@ -17,12 +18,43 @@ import static amazons.Piece.EMPTY;
 class Board {
 
     /**
-     * The number of squares on a side of the board.
+     * The standard number of squares on a side of the board.
      */
-    static final int SIZE = 10;
+    static final int DEFAULT_SIZE = 10;
 
     /**
-     * Initializes a game board with SIZE squares on a side in the
+     * The smallest and largest supported numbers of squares on a side.
+     * Packed moves (see Move.pack) limit boards to 256 squares.
+     */
+    static final int MIN_SIZE = 4, MAX_SIZE = 16;
+
+    /**
+     * Return the number of squares on a side of the board.
+     */
+    static int size() {
+        return _size;
+    }
+
+    /**
+     * Make all subsequently initialized boards have SIZE squares on a
+     * side, where MIN_SIZE <= SIZE <= MAX_SIZE.  Squares, Moves, and
+     * Boards created for a different size must not be used until the size
+     * is changed back, and boards must be re-initialized (see init) before
+     * use.  Must not be called while any other thread is using a Board.
+     */
+    static void setSize(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw error("board size must be between %d and %d",
+                        MIN_SIZE, MAX_SIZE);
+        }
+        _size = size;
+        Square.setSize(size);
+        BitBoard.setSize(size);
+        Move.setSize(size);
+    }
+
+    /**
+     * Initializes a game board with size() squares on a side in the
      * initial position.
      */
     Board() {
@@ -40,10 +72,21 @@ class Board {
      * Copies MODEL into me.
      */
     void copy(Board model) {
-        this.board = model.board.clone();
+        for (int k = 0; k < _bits.length; k += 1) {
+            this._bits[k] = model._bits[k].clone();
+        }
+        allocateScratch();
         this._turn = model.turn();
+        this._key = model._key;
         this._winner = model._winner;
-        this._moves = new ArrayList<>(model._moves);
+        this._history = model._history.clone();
+        this._numMoves = model._numMoves;
+        this._mobility = model._mobility == null ? null
+            : new MobilityMap(model._mobility);
+        this._territory = model._territory == null ? null
+            : new TerritoryMap(model._territory);
+        this._regions = model._regions == null ? null
+            : new RegionMap(model._regions);
     }
 
     /**
@@ -52,20 +95,33 @@ class Board {
     void init() {
         _turn = WHITE;
         _winner = EMPTY;
-        board = new Piece[10][10];
-        for (int i = 0; i < board.length; i += 1) {
-            for (int j = 0; j < board[i].length; j += 1) {
-                board[i][j] = EMPTY;
-            }
+        _key = 0;
+        for (int k = 0; k < _bits.length; k += 1) {
+            _bits[k] = BitBoard.create();
+        }
+        allocateScratch();
+        int n = size(), k = (n - 1) / 3;
+        for (int i = 0; i < n * n; i += 1) {
+            BitBoard.set(_bits[EMPTY.ordinal()], i);
+        }
+        _numMoves = 0;
+        put(WHITE, 0, k);
+        put(WHITE, n - 1, k);
+        put(WHITE, k, 0);
+        put(WHITE, n - 1 - k, 0);
+        put(BLACK, k, n - 1);
+        put(BLACK, n - 1 - k, n - 1);
+        put(BLACK, 0, n - 1 - k);
+        put(BLACK, n - 1, n - 1 - k);
+    }
+
+    /**
+     * Allocate _scratch for boards of the current size().
+     */
+    private void allocateScratch() {
+        for (int k = 0; k < _scratch.length; k += 1) {
+            _scratch[k] = BitBoard.create();
         }
-        put(WHITE, 0, 3);
-        put(WHITE, 9, 3);
-        put(WHITE, 3, 0);
-        put(WHITE, 6, 0);
-        put(BLACK, 3, 9);
-        put(BLACK, 6, 9);
-        put(BLACK, 0, 6);
-        put(BLACK, 9, 6);
     }
 
     /**
@@ -80,23 +136,54 @@ class Board {
      * board.
      */
     int numMoves() {
-        return _moves.size();
+        return _numMoves;
+    }
+
+    /**
+     * Return the number of empty squares.  Since each move fills one
+     * square, this bounds the number of moves left in the game.
+     */
+    int numEmpty() {
+        return BitBoard.count(_bits[EMPTY.ordinal()]);
     }
 
     /**
      * Return the winner in the current position, or null if the game is
-     * not yet finished.
+     * not yet finished.  The result is cached until the position next
+     * changes.
      */
     Piece winner() {
-        Iterator<Move> myMoves = this.legalMoves(this.turn());
-        Iterator<Move> oppMoves = this.legalMoves(this.turn().opponent());
-        if (!myMoves.hasNext()) {
-            return turn().opponent();
-        } else if (!oppMoves.hasNext()) {
-            return turn();
-        } else {
-            return null;
+        if (_winner == EMPTY) {
+            if (!hasAnyMove(turn())) {
+                _winner = turn().opponent();
+            } else if (!hasAnyMove(turn().opponent())) {
+                _winner = turn();
+            } else {
+                _winner = null;
+            }
+        }
+        return _winner;
+    }
+
+    /**
+     * Return true iff SIDE has a legal move in the current position
+     * (regardless of whose turn it is).  An amazon that can move at all
+     * can step to an adjacent empty square and throw its spear back, so
+     * this only examines the neighbours of SIDE's amazons.
+     */
+    boolean hasAnyMove(Piece side) {
+        long[] pieces = _bits[side.ordinal()], empty = _bits[EMPTY.ordinal()];
+        for (int k = BitBoard.next(pieces, 0); k >= 0;
+             k = BitBoard.next(pieces, k + 1)) {
+            Square from = Square.sq(k);
+            for (int dir = 0; dir < 8; dir += 1) {
+                int[] ray = from.ray(dir);
+                if (ray.length > 0 && BitBoard.contains(empty, ray[0])) {
+                    return true;
+                }
+            }
         }
+        return false;
     }
 
     /**
@@ -108,10 +195,25 @@ class Board {
 
     /**
      * Return the contents of the square at (COL, ROW), where
-     * 0 <= COL, ROW <= 9.
+     * 0 <= COL, ROW < size().
      */
     final Piece get(int col, int row) {
-        return board[col][row];
+        return get(Square.sq(col, row).index());
+    }
+
+    /**
+     * Return the contents of the square with index INDEX.
+     */
+    final Piece get(int index) {
+        if (BitBoard.contains(_bits[EMPTY.ordinal()], index)) {
+            return EMPTY;
+        } else if (BitBoard.contains(_bits[SPEAR.ordinal()], index)) {
+            return SPEAR;
+        } else if (BitBoard.contains(_bits[WHITE.ordinal()], index)) {
+            return WHITE;
+        } else {
+            return BLACK;
+        }
     }
 
     /**
@@ -132,7 +234,29 @@ class Board {
      * Set square (COL, ROW) to P.
      */
     final void put(Piece p, int col, int row) {
-        board[col][row] = p;
+        put(p, Square.sq(col, row).index());
+    }
+
+    /**
+     * Set the square with index INDEX to P.
+     */
+    final void put(Piece p, int index) {
+        _key ^= ZOBRIST[get(index).ordinal()][index]
+            ^ ZOBRIST[p.ordinal()][index];
+        for (long[] bits : _bits) {
+            BitBoard.clear(bits, index);
+        }
+        BitBoard.set(_bits[p.ordinal()], index);
+        _winner = EMPTY;
+        if (_mobility != null) {
+            _mobility.rebuild(this);
+        }
+        if (_territory != null) {
+            _territory.rebuild(this);
+        }
+        if (_regions != null) {
+            _regions.rebuild(this);
+        }
     }
 
     /**
@@ -153,21 +277,18 @@ class Board {
         if (!from.isQueenMove(to)) {
             return false;
         }
-        int steps = Math.max(Math.abs(from.col() - to.col()),
-                Math.abs(from.row() - to.row()));
-        if (steps == 0) {
-            return false;
-        }
-        int dir = from.direction(to);
-        for (int i = 1; i <= steps; i += 1) {
-            Square square = from.queenMove(dir, i);
-            if (square != asEmpty) {
-                if (get(square) != EMPTY) {
-                    return false;
-                }
+        long[] empty = _bits[EMPTY.ordinal()];
+        int target = to.index();
+        int skip = asEmpty == null ? -1 : asEmpty.index();
+        for (int i : from.ray(from.direction(to))) {
+            if (i != skip && !BitBoard.contains(empty, i)) {
+                return false;
+            }
+            if (i == target) {
+                return true;
             }
         }
-        return true;
+        return false;
     }
 
     /**
@@ -202,9 +323,7 @@ class Board {
         if (!isUnblockedMove(to, spear, from)) {
             return false;
         }
-        return Square.exists(spear.col(),
-                spear.row())
-                && (board[spear.col()][spear.row()]) != null;
+        return Square.exists(spear.col(), spear.row());
     }
 
     /**
@@ -212,43 +331,127 @@ class Board {
      * position.
      */
     boolean isLegal(Move move) {
-        return isLegal(move.from(), move.to(), move.spear());
+        return isLegal(move.pack());
+    }
+
+    /**
+     * Return true iff the move whose packed form (see Move.pack) is MOVE
+     * is a legal move in the current position.
+     */
+    boolean isLegal(int move) {
+        int n = _size * _size;
+        int from = Move.from(move), to = Move.to(move),
+            spear = Move.spear(move);
+        if (move < 0 || from >= n || to >= n || spear >= n) {
+            return false;
+        }
+        return isLegal(Square.sq(from), Square.sq(to), Square.sq(spear));
     }
 
     /**
      * Move FROM-TO(SPEAR), assuming this is a legal move.
      */
     void makeMove(Square from, Square to, Square spear) {
-        Piece temp = get(from);
-        put(temp, to);
-        put(EMPTY, from);
-        put(SPEAR, spear);
-        _turn = turn().opponent();
-        _moves.add(Move.mv(from, to, spear));
-        _winner = this.winner();
+        makeMove(Move.pack(from.index(), to.index(), spear.index()));
     }
 
     /**
      * Move according to MOVE, assuming it is a legal move.
      */
     void makeMove(Move move) {
-        makeMove(move.from(), move.to(), move.spear());
+        makeMove(move.pack());
     }
 
     /**
-     * Undo one move.  Has no effect on the initial board.
+     * Make the move whose packed encoding (see Move.pack) is MOVE,
+     * assuming it is legal.  The move and the state needed to reverse it
+     * are pushed on a primitive undo stack, so that undo restores the
+     * previous position exactly in constant time.  Together, makeMove
+     * and undo let a search explore the game tree on a single Board.
+     */
+    void makeMove(int move) {
+        int from = Move.from(move), to = Move.to(move),
+            spear = Move.spear(move);
+        int piece = get(from).ordinal();
+        long[] mover = _bits[piece], empty = _bits[EMPTY.ordinal()];
+        if (_mobility != null) {
+            _mobility.makeMove(move);
+        }
+        BitBoard.clear(mover, from);
+        BitBoard.set(empty, from);
+        BitBoard.set(mover, to);
+        BitBoard.clear(empty, to);
+        BitBoard.clear(empty, spear);
+        BitBoard.set(_bits[SPEAR.ordinal()], spear);
+        _key ^= ZOBRIST[piece][from] ^ ZOBRIST[piece][to]
+            ^ ZOBRIST[SPEAR.ordinal()][spear] ^ BLACK_TO_MOVE;
+        if (2 * _numMoves + 2 > _history.length) {
+            _history = Arrays.copyOf(_history, 2 * _history.length);
+        }
+        _history[2 * _numMoves] = move;
+        _history[2 * _numMoves + 1] = _winner == null ? -1 : _winner.ordinal();
+        _numMoves += 1;
+        _turn = turn().opponent();
+        _winner = EMPTY;
+        if (_territory != null) {
+            _territory.makeMove(move);
+        }
+        if (_regions != null) {
+            _regions.makeMove();
+        }
+    }
+
+    /**
+     * Undo one move, restoring the position, side to move and winner
+     * exactly as they were before it.  Has no effect on the initial
+     * board.
      */
     void undo() {
-        if (_moves.size() < 1) {
+        if (_numMoves < 1) {
             return;
         }
-        Move lastMove = _moves.get(numMoves() - 1);
-        _moves.remove(numMoves() - 1);
-        Piece temp = get(lastMove.to());
-        put(temp, lastMove.from());
-        put(EMPTY, lastMove.to());
-        put(EMPTY, lastMove.spear());
+        _numMoves -= 1;
+        int move = _history[2 * _numMoves],
+            winner = _history[2 * _numMoves + 1];
+        int from = Move.from(move), to = Move.to(move),
+            spear = Move.spear(move);
+        if (_mobility != null) {
+            _mobility.undo(move);
+        }
+        long[] empty = _bits[EMPTY.ordinal()];
+        BitBoard.clear(_bits[SPEAR.ordinal()], spear);
+        BitBoard.set(empty, spear);
+        int piece = get(to).ordinal();
+        long[] mover = _bits[piece];
+        BitBoard.clear(mover, to);
+        BitBoard.set(empty, to);
+        BitBoard.set(mover, from);
+        BitBoard.clear(empty, from);
+        _key ^= ZOBRIST[piece][from] ^ ZOBRIST[piece][to]
+            ^ ZOBRIST[SPEAR.ordinal()][spear] ^ BLACK_TO_MOVE;
         _turn = turn().opponent();
+        _winner = winner < 0 ? null : PIECES[winner];
+        if (_territory != null && !_territory.undo()) {
+            _territory.rebuild(this);
+        }
+        if (_regions != null && !_regions.undo()) {
+            _regions.rebuild(this);
+        }
+    }
+
+    /**
+     * Return the Kth move made (from 0) and not undone, in packed form.
+     */
+    int move(int k) {
+        return _history[2 * k];
+    }
+
+    /**
+     * Return the last move made (and not undone), in packed form, or -1
+     * if there is none.
+     */
+    int lastMove() {
+        return _numMoves == 0 ? -1 : _history[2 * _numMoves - 2];
     }
 
     /**
@@ -279,6 +482,169 @@ class Board {
         return new LegalMoveIterator(side);
     }
 
+    /**
+     * Return an upper bound on the number of legal moves for either side
+     * in this position or any position reached from it by moves: the
+     * size needed for move buffers passed to generateMoves.
+     */
+    int maxMoves() {
+        int amazons = Math.max(BitBoard.count(_bits[WHITE.ordinal()]),
+                               BitBoard.count(_bits[BLACK.ordinal()]));
+        int reach = 4 * (size() - 1);
+        return amazons * reach * reach;
+    }
+
+    /**
+     * Store all legal moves on the current board for SIDE (regardless of
+     * whose turn it is) in MOVES, in the packed form given by Move.pack,
+     * and return their number.  MOVES must have room for maxMoves()
+     * moves.  Walks the queen rays of each of SIDE's pieces directly, so
+     * that it allocates nothing.
+     */
+    int generateMoves(Piece side, int[] moves) {
+        long[] pieces = _bits[side.ordinal()], empty = _bits[EMPTY.ordinal()];
+        int n = 0;
+        for (int from = BitBoard.next(pieces, 0); from >= 0;
+             from = BitBoard.next(pieces, from + 1)) {
+            Square start = Square.sq(from);
+            for (int dir = 0; dir < 8; dir += 1) {
+                for (int to : start.ray(dir)) {
+                    if (!BitBoard.contains(empty, to)) {
+                        break;
+                    }
+                    Square dest = Square.sq(to);
+                    for (int dir2 = 0; dir2 < 8; dir2 += 1) {
+                        for (int spear : dest.ray(dir2)) {
+                            if (spear != from
+                                && !BitBoard.contains(empty, spear)) {
+                                break;
+                            }
+                            moves[n] = Move.pack(from, to, spear);
+                            n += 1;
+                        }
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Return an upper bound on the number of queen moves (not counting
+     * spear throws) for either side in this position or any position
+     * reached from it: the size needed for buffers passed to
+     * generateQueenMoves.
+     */
+    int maxQueenMoves() {
+        return maxMoves() / (4 * (size() - 1));
+    }
+
+    /**
+     * Store the queen moves (the first halves of legal moves, without
+     * the spear throws) available to SIDE on the current board
+     * (regardless of whose turn it is) in MOVES, each packed as by
+     * Move.pack with a spear square of 0, and return their number.
+     * MOVES must have room for maxQueenMoves() moves.
+     */
+    int generateQueenMoves(Piece side, int[] moves) {
+        long[] pieces = _bits[side.ordinal()], empty = _bits[EMPTY.ordinal()];
+        int n = 0;
+        for (int from = BitBoard.next(pieces, 0); from >= 0;
+             from = BitBoard.next(pieces, from + 1)) {
+            Square start = Square.sq(from);
+            for (int dir = 0; dir < 8; dir += 1) {
+                for (int to : start.ray(dir)) {
+                    if (!BitBoard.contains(empty, to)) {
+                        break;
+                    }
+                    moves[n] = Move.pack(from, to, 0);
+                    n += 1;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Store in SPEARS the indices of the squares to which the amazon on
+     * FROM could throw a spear after moving to TO (which must be a legal
+     * queen move on the current board), and return their number.  SPEARS
+     * must have room for 4 * (size() - 1) squares.
+     */
+    int generateSpears(int from, int to, int[] spears) {
+        long[] empty = _bits[EMPTY.ordinal()];
+        Square dest = Square.sq(to);
+        int n = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            for (int spear : dest.ray(dir)) {
+                if (spear != from && !BitBoard.contains(empty, spear)) {
+                    break;
+                }
+                spears[n] = spear;
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Set RESULT to the set of squares reachable by an unblocked queen
+     * move from FROM, treating square index ASEMPTY (if >= 0) as empty.
+     */
+    void reachableFrom(int from, int asEmpty, long[] result) {
+        long[] src = _scratch[0], empty = _scratch[1];
+        BitBoard.clear(src);
+        BitBoard.set(src, from);
+        BitBoard.copy(_bits[EMPTY.ordinal()], empty);
+        if (asEmpty >= 0) {
+            BitBoard.set(empty, asEmpty);
+        }
+        BitBoard.queenReach(src, empty, _scratch[2], result);
+    }
+
+    /**
+     * Return the number of legal moves for SIDE in the current position
+     * (regardless of whose turn it is), without generating them: for
+     * each square an amazon can move to, add the number of squares it
+     * could then throw a spear to, counting the square it vacated.
+     * Equivalent to, but much cheaper than, generateMoves(SIDE, ...).
+     */
+    int countLegalMoves(Piece side) {
+        long[] pieces = _bits[side.ordinal()], empty = _bits[EMPTY.ordinal()];
+        int n = 0;
+        for (int from = BitBoard.next(pieces, 0); from >= 0;
+             from = BitBoard.next(pieces, from + 1)) {
+            Square start = Square.sq(from);
+            for (int dir = 0; dir < 8; dir += 1) {
+                for (int to : start.ray(dir)) {
+                    if (!BitBoard.contains(empty, to)) {
+                        break;
+                    }
+                    n += spearReach(Square.sq(to), from, empty);
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Return the number of squares reachable by a queen move from FROM,
+     * where only squares in EMPTY and the square with index ASEMPTY may
+     * be passed over or landed on.
+     */
+    private static int spearReach(Square from, int asEmpty, long[] empty) {
+        int n = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            for (int sq : from.ray(dir)) {
+                if (sq != asEmpty && !BitBoard.contains(empty, sq)) {
+                    break;
+                }
+                n += 1;
+            }
+        }
+        return n;
+    }
+
     /**
      * An iterator used by reachableFrom.
      */
@@ -289,66 +655,37 @@ class Board {
          * treating ASEMPTY as empty.
          */
         ReachableFromIterator(Square from, Square asEmpty) {
-            _from = from;
-            _dir = -1;
-            _steps = 0;
-            _asEmpty = asEmpty;
-            toNext();
+            _reach = BitBoard.create();
+            reachableFrom(from.index(), asEmpty == null ? -1
+                          : asEmpty.index(), _reach);
+            _next = BitBoard.next(_reach, 0);
         }
 
         @Override
         public boolean hasNext() {
-            return _dir < 8;
+            return _next >= 0;
         }
 
         @Override
         public Square next() {
             assert hasNext();
-            Square nextOne = _from.queenMove(_dir, _steps);
-            toNext();
+            Square nextOne = Square.sq(_next);
+            _next = BitBoard.next(_reach, _next + 1);
             return nextOne;
         }
 
         /**
-         * Advance _dir and _steps, so that the next valid Square is
-         * _steps steps in direction _dir from _from.
+         * The set of reachable squares.
          */
-        private void toNext() {
-            while (_dir < 8) {
-                _steps += 1;
-                if (Square.exists(_from.col(), _from.row())
-                        && isUnblockedMove(_from, _from.queenMove(
-                        _dir, _steps), _asEmpty)) {
-                    break;
-                } else if (_steps >= SIZE) {
-                    _steps = 0;
-                    _dir += 1;
-                }
-
-
-            }
-        }
-
-        /**
-         * Starting square.
-         */
-        private Square _from;
-        /**
-         * Current direction.
-         */
-        private int _dir;
+        private long[] _reach;
         /**
-         * Current distance.
+         * Index of the next square in _reach to deliver, or -1 if none.
          */
-        private int _steps;
-        /**
-         * Square treated as empty.
-         */
-        private Square _asEmpty;
+        private int _next;
     }
 
     /**
-     * An iterator used by legalMoves.
+     * An iterator used by legalMoves: a thin adapter over generateMoves.
      */
     private class LegalMoveIterator implements Iterator<Move> {
 
@@ -356,106 +693,156 @@ class Board {
          * All legal moves for SIDE (WHITE or BLACK).
          */
         LegalMoveIterator(Piece side) {
-            _startingSquares = Square.iterator();
-            _spearThrows = NO_SQUARES;
-            _pieceMoves = NO_SQUARES;
-            _fromPiece = side;
-            toNext();
+            _moveList = new int[maxMoves()];
+            _count = generateMoves(side, _moveList);
         }
 
         @Override
         public boolean hasNext() {
-            int point = 0;
-            for (int i = ((SIZE * SIZE) - 1); i >= 0; i -= 1) {
-                if (get(Square.sq(i)) == _fromPiece) {
-                    point = i;
-                    break;
-                }
-            }
-            if (_spearThrows.hasNext() || _pieceMoves.hasNext()) {
-                return true;
-            }
-            if (_start.index() < point) {
-                return true;
-            }
-            return false;
+            return _next < _count;
         }
 
         @Override
         public Move next() {
-            if (_spearThrows.hasNext()) {
-                Square curr = _spearThrows.next();
-                if (curr != null) {
-                    Move m = Move.mv(_start, _nextSquare, curr);
-                    toNext();
-                    return m;
-                }
-            }
-            return null;
-        }
-
-        /**
-         * Advance so that the next valid Move is
-         * _start-_nextSquare(sp), where sp is the next value of
-         * _spearThrows.
-         */
-        private void toNext() {
-            if (!_spearThrows.hasNext()) {
-                if (!_pieceMoves.hasNext()) {
-                    if (!_startingSquares.hasNext()) {
-                        return;
-                    } else {
-                        while (_startingSquares.hasNext()) {
-                            Square curr = _startingSquares.next();
-                            if (get(curr).equals(_fromPiece)) {
-                                _start = curr;
-                                _pieceMoves = reachableFrom(_start, null);
-                                if (_pieceMoves.hasNext()) {
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
-                if (_pieceMoves.hasNext()) {
-                    _nextSquare = _pieceMoves.next();
-                    _spearThrows = reachableFrom(_nextSquare, _start);
-                }
-            }
+            assert hasNext();
+            Move m = Move.mv(_moveList[_next]);
+            _next += 1;
+            return m;
         }
 
         /**
-         * Color of side whose moves we are iterating.
-         */
-        private Piece _fromPiece;
-        /**
-         * Current starting square.
+         * The packed moves to deliver.
          */
-        private Square _start;
+        private int[] _moveList;
         /**
-         * Remaining starting squares to consider.
+         * The number of moves in _moveList.
          */
-        private Iterator<Square> _startingSquares;
+        private int _count;
         /**
-         * Current piece's new position.
+         * Index in _moveList of the next move to deliver.
          */
-        private Square _nextSquare;
-        /**
-         * Remaining moves from _start to consider.
-         */
-        private Iterator<Square> _pieceMoves;
-        /**
-         * Remaining spear throws from _piece to consider.
-         */
-        private Iterator<Square> _spearThrows;
+        private int _next;
+    }
+
+    /**
+     * Start maintaining a MobilityMap for this board if ON, and stop
+     * (discarding it) otherwise.  While it is maintained, makeMove and
+     * undo update it incrementally.
+     */
+    void trackMobility(boolean on) {
+        if (!on) {
+            _mobility = null;
+        } else if (_mobility == null) {
+            _mobility = new MobilityMap(this);
+        }
+    }
+
+    /**
+     * Return the MobilityMap for the current position, or null if it is
+     * not being maintained (see trackMobility).  The result should not be
+     * modified by the caller.
+     */
+    MobilityMap mobilityMap() {
+        return _mobility;
+    }
+
+    /**
+     * Start maintaining a TerritoryMap for this board if ON, and stop
+     * (discarding it) otherwise.  While it is maintained, makeMove and
+     * undo update it incrementally.
+     */
+    void trackTerritory(boolean on) {
+        if (!on) {
+            _territory = null;
+        } else if (_territory == null) {
+            _territory = new TerritoryMap(this);
+        }
+    }
+
+    /**
+     * Return the TerritoryMap for the current position, or null if it is
+     * not being maintained (see trackTerritory).  The result should not
+     * be modified by the caller.
+     */
+    TerritoryMap territoryMap() {
+        return _territory;
+    }
+
+    /**
+     * Start maintaining a RegionMap for this board if ON, and stop
+     * (discarding it) otherwise.  While it is maintained, makeMove and
+     * undo keep it up to date.
+     */
+    void trackRegions(boolean on) {
+        if (!on) {
+            _regions = null;
+        } else if (_regions == null) {
+            _regions = new RegionMap(this);
+        }
+    }
+
+    /**
+     * Return the RegionMap for the current position, or null if it is
+     * not being maintained (see trackRegions).  The result should not be
+     * modified by the caller, and describes the current position only
+     * until the next change to this board.
+     */
+    RegionMap regionMap() {
+        if (_regions != null) {
+            _regions.update(this);
+        }
+        return _regions;
+    }
+
+    /**
+     * Return the Zobrist key of the current position: the XOR of a fixed
+     * random 64-bit value for each (piece, square) pair on the board,
+     * plus another if it is Black's turn.  It is kept up to date by
+     * put, makeMove and undo, so that it costs nothing to obtain.
+     */
+    long key() {
+        return _key;
+    }
+
+    /**
+     * Return the key() of the position after the legal move MOVE (in
+     * packed form), without making it.
+     */
+    long keyAfter(int move) {
+        int from = Move.from(move), to = Move.to(move);
+        int piece = get(from).ordinal();
+        return _key ^ ZOBRIST[piece][from] ^ ZOBRIST[piece][to]
+            ^ ZOBRIST[SPEAR.ordinal()][Move.spear(move)] ^ BLACK_TO_MOVE;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Board)) {
+            return false;
+        }
+        Board other = (Board) obj;
+        if (other._key != _key || other._turn != _turn) {
+            return false;
+        }
+        for (int k = 0; k < _bits.length; k += 1) {
+            if (!Arrays.equals(_bits[k], other._bits[k])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(_key);
     }
 
     @Override
     public String toString() {
         String boardString = "";
-        for (int i = SIZE - 1; i >= 0; i -= 1) {
+        for (int i = size() - 1; i >= 0; i -= 1) {
             boardString += "  ";
-            for (int j = 0; j < SIZE; j += 1) {
+            for (int j = 0; j < size(); j += 1) {
                 if (get(j, i).equals(EMPTY)) {
                     boardString += " -";
                 }
@@ -475,15 +862,18 @@ class Board {
     }
 
     /**
-     * An empty iterator for initialization.
+     * The number of squares on a side of the board.
      */
-    private static final Iterator<Square> NO_SQUARES =
-            Collections.emptyIterator();
+    private static int _size = DEFAULT_SIZE;
 
     /**
      * Piece whose turn it is (BLACK or WHITE).
      */
     private Piece _turn;
+    /**
+     * The Zobrist key of the current position (see key()).
+     */
+    private long _key;
     /**
      * Cached value of winner on this board, or EMPTY if it has not been
      * computed.
@@ -491,12 +881,83 @@ class Board {
     private Piece _winner;
 
     /**
-     * The representation of the board.
+     * The representation of the board: _bits[p.ordinal()] is the
+     * bitboard of squares containing Piece p (EMPTY included).
      */
-    private Piece[][] board;
+    private final long[][] _bits = new long[Piece.values().length][];
+
+    /**
+     * Incrementally maintained mobility information, or null if it is not
+     * being maintained.
+     */
+    private MobilityMap _mobility;
+
+    /**
+     * Incrementally maintained distances and territory, or null if they
+     * are not being maintained.
+     */
+    private TerritoryMap _territory;
+
+    /**
+     * The regions of empty squares, or null if they are not being
+     * maintained.
+     */
+    private RegionMap _regions;
+
+    /**
+     * Scratch bitboards for reachability computations, sized (like _bits)
+     * by init and copy.
+     */
+    private final long[][] _scratch = new long[3][];
+
+    /**
+     * The undo stack.  For the Kth move made (from 0), _history[2K] is
+     * the packed move and _history[2K + 1] is the ordinal of the value
+     * of _winner before it was made (-1 for null).
+     */
+    private int[] _history = new int[INITIAL_HISTORY];
+
+    /**
+     * The number of moves on the undo stack.
+     */
+    private int _numMoves;
+
+    /**
+     * The initial size of _history.
+     */
+    private static final int INITIAL_HISTORY = 2 * 128;
+
+    /**
+     * ZOBRIST[p][i] is the key contribution of Piece with ordinal p on the
+     * square with index I.  The entries for EMPTY are 0.  There are enough
+     * entries for the largest board.
+     */
+    private static final long[][] ZOBRIST =
+        new long[Piece.values().length][MAX_SIZE * MAX_SIZE];
+
+    /**
+     * The key contribution of Black's being on move.
+     */
+    private static final long BLACK_TO_MOVE;
+
+    /**
+     * Seed for the generator of Zobrist keys, fixed so that keys are the
+     * same from run to run.
+     */
+    private static final long ZOBRIST_SEED = 0x5DEECE66DL;
+
+    static {
+        Random keys = new Random(ZOBRIST_SEED);
+        for (Piece p : new Piece[] { WHITE, BLACK, SPEAR }) {
+            for (int i = 0; i < MAX_SIZE * MAX_SIZE; i += 1) {
+                ZOBRIST[p.ordinal()][i] = keys.nextLong();
+            }
+        }
+        BLACK_TO_MOVE = keys.nextLong();
+    }
 
     /**
-     * The moves stored in a list.
+     * All Pieces, by ordinal.
      */
-    private ArrayList<Move> _moves = new ArrayList<>();
+    private static final Piece[] PIECES = Piece.values();
 }
@@ -3,7 +3,9 @@ package amazons;
 import org.junit.Test;
 
 import java.util.Iterator;
+import java.util.Random;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -24,4 +26,394 @@ public class BoardTest {
         boolean binTrue = b.isUnblockedMove(Square.sq(23), Square.sq(34), null);
         assertTrue(binTrue);
     }
+
+    @Test
+    public void generateMovesTests() {
+        Board b = new Board();
+        int[] moves = new int[b.maxMoves()];
+        int n = b.generateMoves(Piece.WHITE, moves);
+        assertEquals(2176, n);
+        assertEquals(2176, b.countLegalMoves(Piece.WHITE));
+        assertEquals(2176, b.countLegalMoves(Piece.BLACK));
+        Iterator<Move> iter = b.legalMoves();
+        for (int k = 0; k < n; k += 1) {
+            assertTrue(iter.hasNext());
+            Move m = iter.next();
+            assertEquals(m, Move.mv(moves[k]));
+            assertEquals(moves[k], m.pack());
+            assertTrue(b.isLegal(m));
+            assertTrue(b.isLegal(moves[k]));
+        }
+        assertFalse(iter.hasNext());
+        assertFalse(b.isLegal(Move.pack(0, 1, 2)));
+        assertFalse(b.isLegal(Move.pack(3, 200, 3)));
+    }
+
+    @Test
+    public void packedMoveTests() {
+        int packed = Move.pack(Square.sq("d1").index(),
+                               Square.sq("d7").index(),
+                               Square.sq("g7").index());
+        Move m = Move.mv("d1-d7(g7)");
+        assertEquals(packed, m.pack());
+        assertEquals(m, Move.mv(packed));
+        assertEquals(m.hashCode(), Move.mv("d1 d7 g7").hashCode());
+        assertEquals("d1-d7(g7)", Move.toString(packed));
+        assertEquals("d1-d7(g7)", m.toString());
+        assertEquals(Square.sq("d7"), m.to());
+        assertFalse(m.equals(Move.mv("d1-d7(d1)")));
+    }
+
+    @Test
+    public void offBoardMoveTests() {
+        assertEquals(null, Move.mv("k1-k2(k3)"));
+        assertEquals(null, Move.mv("j10-k10(j10)"));
+        try {
+            Board.setSize(6);
+            assertEquals(null, Move.mv("a1-a7(a6)"));
+            assertEquals(null, Move.mv("g1-f1(e1)"));
+            assertEquals(Move.mv("a1-a6(f6)"), Move.mv("a1 a6 f6"));
+            assertTrue(Move.mv("a1-a6(f6)") != null);
+        } finally {
+            Board.setSize(Board.DEFAULT_SIZE);
+        }
+    }
+
+    @Test
+    public void makeUndoTests() {
+        Board b = new Board();
+        Random rand = new Random(61);
+        int[] moves = new int[b.maxMoves()];
+        String[] boards = new String[200];
+        long[] keys = new long[200];
+        Piece[] winners = new Piece[200];
+        int made;
+        for (made = 0; b.winner() == null; made += 1) {
+            boards[made] = b.toString();
+            keys[made] = b.key();
+            winners[made] = b.winner();
+            int n = b.generateMoves(b.turn(), moves);
+            assertEquals(n, b.countLegalMoves(b.turn()));
+            assertEquals(b.generateMoves(b.turn().opponent(), moves),
+                         b.countLegalMoves(b.turn().opponent()));
+            n = b.generateMoves(b.turn(), moves);
+            int move = moves[rand.nextInt(n)];
+            long after = b.keyAfter(move);
+            b.makeMove(move);
+            assertEquals(after, b.key());
+            assertEquals(made + 1, b.numMoves());
+        }
+        assertTrue(b.winner() != null);
+        while (made > 0) {
+            made -= 1;
+            b.undo();
+            assertEquals(boards[made], b.toString());
+            assertEquals(keys[made], b.key());
+            assertEquals(winners[made], b.winner());
+            assertEquals(made % 2 == 0 ? Piece.WHITE : Piece.BLACK,
+                         b.turn());
+        }
+        assertEquals(UnitTest.INIT_BOARD_STATE, b.toString());
+    }
+
+    @Test
+    public void winnerTests() {
+        Board b = new Board();
+        assertEquals(null, b.winner());
+        assertTrue(b.hasAnyMove(Piece.WHITE));
+        b.put(Piece.SPEAR, Square.sq("a5"));
+        b.put(Piece.SPEAR, Square.sq("b5"));
+        b.put(Piece.SPEAR, Square.sq("b4"));
+        b.put(Piece.SPEAR, Square.sq("b3"));
+        b.put(Piece.SPEAR, Square.sq("a3"));
+        assertTrue(b.hasAnyMove(Piece.WHITE));
+        for (String sq : new String[] {"c1", "c2", "d2", "e2", "e1",
+                                       "f1", "f2", "g2", "h2", "h1",
+                                       "i3", "i4", "i5", "j5"}) {
+            b.put(Piece.SPEAR, Square.sq(sq));
+        }
+        assertTrue(b.hasAnyMove(Piece.WHITE));
+        assertEquals(null, b.winner());
+        b.put(Piece.SPEAR, Square.sq("j3"));
+        assertFalse(b.hasAnyMove(Piece.WHITE));
+        assertTrue(b.hasAnyMove(Piece.BLACK));
+        assertEquals(Piece.BLACK, b.winner());
+    }
+
+    @Test
+    public void keyTests() {
+        Board b1 = new Board(), b2 = new Board();
+        assertEquals(b1, b2);
+        assertEquals(b1.key(), b2.key());
+        for (String m : new String[] {"d1-d2(d3)", "a7-a8(a9)",
+                                      "g1-g2(g3)", "j7-j8(j9)"}) {
+            b1.makeMove(Move.mv(m));
+        }
+        for (String m : new String[] {"g1-g2(g3)", "a7-a8(a9)",
+                                      "d1-d2(d3)", "j7-j8(j9)"}) {
+            b2.makeMove(Move.mv(m));
+        }
+        assertEquals(b1, b2);
+        assertEquals(b1.hashCode(), b2.hashCode());
+        b2.undo();
+        assertFalse(b1.equals(b2));
+        assertTrue(b1.key() != b2.key());
+        Board b3 = new Board(b2);
+        b3.put(Piece.BLACK, Square.sq("j8"));
+        b3.put(Piece.EMPTY, Square.sq("j7"));
+        b3.put(Piece.SPEAR, Square.sq("j9"));
+        assertEquals(b1.toString(), b3.toString());
+        assertTrue(b1.key() != b3.key());
+        b2.makeMove(Move.mv("j7-j8(j9)"));
+        assertEquals(b1.key(), b2.key());
+    }
+
+    @Test
+    public void countLegalMovesTests() {
+        Random rand = new Random(2468);
+        for (int game = 0; game < 10; game += 1) {
+            Board b = new Board();
+            int[] moves = new int[b.maxMoves()];
+            while (b.winner() == null) {
+                for (Piece side : new Piece[] {Piece.WHITE, Piece.BLACK}) {
+                    assertEquals(b.generateMoves(side, moves),
+                                 b.countLegalMoves(side));
+                }
+                int n = b.generateMoves(b.turn(), moves);
+                b.makeMove(moves[rand.nextInt(n)]);
+            }
+            assertEquals(0, b.countLegalMoves(b.winner().opponent()));
+        }
+    }
+
+    @Test
+    public void mobilityMapTests() {
+        Board b = new Board();
+        b.trackMobility(true);
+        Random rand = new Random(1234);
+        int[] moves = new int[b.maxMoves()];
+        long[] reach = BitBoard.create();
+        while (b.winner() == null) {
+            checkMobility(b, reach);
+            int n = b.generateMoves(b.turn(), moves);
+            b.makeMove(moves[rand.nextInt(n)]);
+            if (rand.nextInt(4) == 0) {
+                b.undo();
+                checkMobility(b, reach);
+                b.makeMove(moves[rand.nextInt(n)]);
+            }
+        }
+        checkMobility(b, reach);
+    }
+
+    /** Check B's MobilityMap against values computed from scratch, using
+     *  REACH as scratch space. */
+    private void checkMobility(Board b, long[] reach) {
+        MobilityMap map = b.mobilityMap();
+        int[] whiteHits = new int[Board.size() * Board.size()];
+        int mobility = 0;
+        for (int i = 0; i < Board.size() * Board.size(); i += 1) {
+            b.reachableFrom(i, -1, reach);
+            assertEquals(BitBoard.count(reach), map.reach(i));
+            if (b.get(i) == Piece.WHITE) {
+                mobility += BitBoard.count(reach);
+                for (int j = BitBoard.next(reach, 0); j >= 0;
+                     j = BitBoard.next(reach, j + 1)) {
+                    whiteHits[j] += 1;
+                }
+                assertEquals(map.isTrapped(i), BitBoard.isEmpty(reach));
+            }
+        }
+        for (int i = 0; i < Board.size() * Board.size(); i += 1) {
+            assertEquals(whiteHits[i], map.hits(Piece.WHITE, i));
+        }
+        assertEquals(mobility, map.mobility(Piece.WHITE));
+    }
+
+    @Test
+    public void territoryMapTests() {
+        Board b = new Board();
+        b.trackTerritory(true);
+        Random rand = new Random(4321);
+        int[] moves = new int[b.maxMoves()];
+        while (b.winner() == null) {
+            checkTerritory(b);
+            int n = b.generateMoves(b.turn(), moves);
+            b.makeMove(moves[rand.nextInt(n)]);
+            if (rand.nextInt(3) == 0) {
+                checkTerritory(b);
+                b.undo();
+                checkTerritory(b);
+                b.makeMove(moves[rand.nextInt(n)]);
+            }
+            if (b.winner() == null && rand.nextInt(2) == 0) {
+                n = b.generateMoves(b.turn(), moves);
+                b.makeMove(moves[rand.nextInt(n)]);
+                b.undo();
+            }
+        }
+        checkTerritory(b);
+        Board copy = new Board(b);
+        for (int k = 0; k < 10; k += 1) {
+            copy.undo();
+            checkTerritory(copy);
+        }
+    }
+
+    @Test
+    public void regionMapTests() {
+        Board b = new Board();
+        b.trackRegions(true);
+        RegionMap regions = b.regionMap();
+        assertEquals(1, regions.regions());
+        assertFalse(regions.separated());
+        assertEquals(92, regions.room(Piece.WHITE));
+        for (char col = 'a'; col <= 'j'; col += 1) {
+            b.put(Piece.SPEAR, Square.sq(col + "5"));
+        }
+        regions = b.regionMap();
+        assertEquals(2, regions.regions());
+        assertTrue(regions.separated());
+        assertEquals(36, regions.room(Piece.WHITE));
+        assertEquals(46, regions.room(Piece.BLACK));
+        int low = regions.region(Square.sq("e2").index());
+        assertEquals(36, regions.size(low));
+        assertTrue(regions.borders(low, Piece.WHITE));
+        assertFalse(regions.borders(low, Piece.BLACK));
+        assertEquals(-1, regions.region(Square.sq("e5").index()));
+
+        b = new Board();
+        b.trackRegions(true);
+        for (int sq = 0; sq < 100; sq += 1) {
+            b.put(Piece.SPEAR, sq);
+        }
+        b.put(Piece.EMPTY, Square.sq("a1"));
+        b.put(Piece.EMPTY, Square.sq("b1"));
+        b.put(Piece.WHITE, Square.sq("c1"));
+        b.put(Piece.BLACK, Square.sq("d2"));
+        regions = b.regionMap();
+        assertEquals(1, regions.regions());
+        assertFalse(regions.borders(0, Piece.BLACK));
+        assertFalse(regions.separated());
+
+        b = new Board();
+        b.trackRegions(true);
+        Random rand = new Random(8765);
+        int[] moves = new int[b.maxMoves()];
+        while (b.winner() == null) {
+            checkRegions(b);
+            int n = b.generateMoves(b.turn(), moves);
+            b.makeMove(moves[rand.nextInt(n)]);
+            if (b.winner() == null && rand.nextInt(3) == 0) {
+                checkRegions(b);
+                n = b.generateMoves(b.turn(), moves);
+                b.makeMove(moves[rand.nextInt(n)]);
+                b.undo();
+            }
+        }
+        checkRegions(b);
+        Board copy = new Board(b);
+        for (int k = 0; k < 10; k += 1) {
+            copy.undo();
+            checkRegions(copy);
+            b.undo();
+            checkRegions(b);
+        }
+    }
+
+    /** Check B's RegionMap against one computed from scratch. */
+    private void checkRegions(Board b) {
+        RegionMap map = b.regionMap(), fresh = new RegionMap(b);
+        fresh.update(b);
+        assertEquals(fresh.regions(), map.regions());
+        assertEquals(fresh.separated(), map.separated());
+        for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK }) {
+            assertEquals(fresh.room(side), map.room(side));
+        }
+        for (int i = 0; i < Board.size() * Board.size(); i += 1) {
+            assertEquals(fresh.region(i), map.region(i));
+        }
+    }
+
+    /** Check B's TerritoryMap against one computed from scratch. */
+    private void checkTerritory(Board b) {
+        TerritoryMap map = b.territoryMap(), fresh = new TerritoryMap(b);
+        for (int i = 0; i < Board.size() * Board.size(); i += 1) {
+            for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK }) {
+                assertEquals(fresh.queenDistance(side, i),
+                             map.queenDistance(side, i));
+                assertEquals(fresh.kingDistance(side, i),
+                             map.kingDistance(side, i));
+            }
+        }
+        assertEquals(fresh.queenTerritory(), map.queenTerritory());
+        assertEquals(fresh.queenTies(), map.queenTies());
+        assertEquals(fresh.kingTerritory(), map.kingTerritory());
+        assertEquals(fresh.kingTies(), map.kingTies());
+        assertEquals(fresh.position(), map.position());
+        assertEquals(fresh.contact(), map.contact());
+    }
+
+    @Test
+    public void sizeTests() {
+        try {
+            for (int size : new int[] {6, 8, 12, 14}) {
+                Board.setSize(size);
+                Board b = new Board();
+                assertEquals(size, Board.size());
+                assertEquals(size * size, b.toString().replace(" ", "")
+                             .replace("\n", "").length());
+                int[] moves = new int[b.maxMoves()];
+                Random rand = new Random(size);
+                while (b.winner() == null) {
+                    int n = b.generateMoves(b.turn(), moves);
+                    assertEquals(n, b.countLegalMoves(b.turn()));
+                    for (int k = 0; k < n; k += 1) {
+                        assertTrue(b.isLegal(Move.mv(moves[k])));
+                    }
+                    Move m = Move.mv(moves[rand.nextInt(n)]);
+                    assertEquals(m, Move.mv(m.toString()));
+                    b.makeMove(m);
+                }
+            }
+            Board.setSize(Board.MAX_SIZE);
+            assertEquals(Board.MAX_SIZE * Board.MAX_SIZE - 1,
+                         Square.sq("p16").index());
+        } finally {
+            Board.setSize(Board.DEFAULT_SIZE);
+        }
+        Board b = new Board();
+        assertEquals(UnitTest.INIT_BOARD_STATE, b.toString());
+        assertEquals(99, Square.sq("j10").index());
+    }
+
+    @Test
+    public void resizeTests() {
+        Board b = new Board(), c = new Board();
+        try {
+            for (int size : new int[] {Board.MAX_SIZE, 6}) {
+                Board.setSize(size);
+                b.init();
+                int[] moves = new int[b.maxMoves()];
+                long[] reach = BitBoard.create();
+                int n = b.generateMoves(b.turn(), moves);
+                assertEquals(n, b.countLegalMoves(b.turn()));
+                for (int k = 0; k < n; k += 1) {
+                    int from = Move.from(moves[k]), to = Move.to(moves[k]);
+                    b.reachableFrom(from, -1, reach);
+                    assertTrue(BitBoard.contains(reach, to));
+                    b.reachableFrom(to, from, reach);
+                    assertTrue(BitBoard.contains(reach,
+                                                 Move.spear(moves[k])));
+                }
+                c.copy(b);
+                c.makeMove(moves[n - 1]);
+                Iterator<Square> iter =
+                    c.reachableFrom(Square.sq(Move.to(moves[n - 1])), null);
+                assertTrue(iter.hasNext());
+            }
+        } finally {
+            Board.setSize(Board.DEFAULT_SIZE);
+        }
+    }
 }
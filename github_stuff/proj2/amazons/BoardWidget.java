@@ -34,16 +34,14 @@ class BoardWidget extends Pad {
         BLACK_QUEEN_IMAGE = "bq4.png";
 
     /** Size parameters. */
-    private static final int
-        SQUARE_SIDE = 30,
-        BOARD_SIDE = SQUARE_SIDE * 10;
+    private static final int SQUARE_SIDE = 30;
 
     /** A graphical representation of an Amazons board that sends commands
      *  derived from mouse clicks to COMMANDS.  */
     BoardWidget(ArrayBlockingQueue<String> commands) {
         _commands = commands;
         setMouseHandler("click", this::mouseClicked);
-        setPreferredSize(BOARD_SIDE, BOARD_SIDE);
+        setPreferredSize(boardSide(), boardSide());
 
         try {
             _whiteQueen = ImageIO.read(Utils.getResource(WHITE_QUEEN_IMAGE));
@@ -58,7 +56,7 @@ class BoardWidget extends Pad {
     /** Draw the bare board G.  */
     private void drawGrid(Graphics2D g) {
         g.setColor(LIGHT_SQUARE_COLOR);
-        g.fillRect(0, 0, BOARD_SIDE, BOARD_SIDE);
+        g.fillRect(0, 0, boardSide(), boardSide());
     }
 
     @Override
@@ -81,9 +79,8 @@ class BoardWidget extends Pad {
     private synchronized void mouseClicked(String unused, MouseEvent e) {
         int xpos = e.getX(), ypos = e.getY();
         int x = xpos / SQUARE_SIDE,
-            y = (BOARD_SIDE - ypos) / SQUARE_SIDE;
-        if (_acceptingMoves
-            && x >= 0 && x < Board.SIZE && y >= 0 && y < Board.SIZE) {
+            y = (boardSide() - ypos) / SQUARE_SIDE;
+        if (_acceptingMoves && Square.exists(x, y)) {
             click(sq(x, y));
         }
     }
@@ -111,7 +108,12 @@ class BoardWidget extends Pad {
     /** Return y-pixel coordinate of the upper corners of row Y
      *  relative to the upper-left corner of the board. */
     private int cy(int y) {
-        return (Board.SIZE - y - 1) * SQUARE_SIDE;
+        return (Board.size() - y - 1) * SQUARE_SIDE;
+    }
+
+    /** Return the width and height of the board in pixels. */
+    private int boardSide() {
+        return SQUARE_SIDE * Board.size();
     }
 
     /** Return x-pixel coordinate of the left corner of S
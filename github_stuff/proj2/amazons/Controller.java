@@ -94,6 +94,54 @@ final class Controller {
         return _randGen.nextInt(U);
     }
 
+    /**
+     * Return the number of milliseconds an automated player may spend
+     * choosing a move.
+     */
+    long timeLimit() {
+        return _timeLimit;
+    }
+
+    /**
+     * Return the number of threads an automated player may use to choose
+     * a move.
+     */
+    int threads() {
+        return _threads;
+    }
+
+    /**
+     * Return the exact depth to which automated players should search, or
+     * 0 if they should search as deeply as their time limit allows.
+     */
+    int searchDepth() {
+        return _searchDepth;
+    }
+
+    /**
+     * Return a template (see Evaluator.create) for the evaluation
+     * function automated players playing SIDE should use.
+     */
+    Evaluator evaluator(Piece side) {
+        return side == BLACK ? _blackEvaluator : _whiteEvaluator;
+    }
+
+    /**
+     * Return log2 of the number of evaluations automated players should
+     * cache per thread, or 0 if they should cache none.
+     */
+    int evalCacheBits() {
+        return _evalCacheBits;
+    }
+
+    /**
+     * Return the search options automated players should use.  These are
+     * shared by all of them, and change only between moves.
+     */
+    SearchOptions searchOptions() {
+        return _searchOptions;
+    }
+
     /**
      * Re-seed the pseudo-random number generator (PRNG) that supplies randInt
      * with the value SEED. Identical seeds produce identical sequences.
@@ -174,11 +222,17 @@ final class Controller {
         new Command("seed\\s+(\\d+)$", this::doSeed),
         new Command("dump$", this::doDump),
         new Command("new$", this::doNew),
-        new Command(
-                "([a-j])([0-9]|10)[-]([a-j])([0-9]|10)[(]([a-j])([0-9]|10)[)]",
-                this::doMove),
-        new Command("([a-j])([0-9]|10)[ ]([a-j])([0-9]|10)[ ]([a-j])([0-9]|10)",
-                this::doMove),
+        new Command("size\\s+(\\d+)$", this::doSize),
+        new Command("limit\\s+(\\d+)$", this::doLimit),
+        new Command("threads\\s+(\\d+)$", this::doThreads),
+        new Command("depth\\s+(\\d+)$", this::doDepth),
+        new Command("eval(?:\\s+(white|black))?\\s+(\\w+)$", this::doEval),
+        new Command("evalcache\\s+(\\d+)$", this::doEvalCache),
+        new Command("evalcache$", this::doEvalCacheStats),
+        new Command("option\\s+(\\w+)\\s+(\\w+)$", this::doOption),
+        new Command("put\\s+(white|black|spear|empty)((?:\\s+"
+                    + Square.SQ + ")+)$", this::doPut),
+        new Command(Move.MOVE_PATTERN.pattern(), this::doMove),
         new Command("auto\\s+(?i)(black|white)$", this::doAuto),
         new Command("manual\\s+(?i)(black|white)$", this::doManual)
     };
@@ -247,35 +301,151 @@ final class Controller {
         System.out.printf("===%n%s===%n", _board);
     }
 
+    /**
+     * Command "size N", where N is the first group of MAT: start a new
+     * game on an NxN board.
+     */
+    private void doSize(Matcher mat) {
+        try {
+            Board.setSize(Integer.parseInt(mat.group(1)));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        doNew(mat);
+    }
+
+    /**
+     * Command "limit N", where N is the first group of MAT: allow
+     * automated players N milliseconds to choose each move.
+     */
+    private void doLimit(Matcher mat) {
+        try {
+            _timeLimit = Long.parseLong(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /**
+     * Command "threads N", where N is the first group of MAT: allow
+     * automated players to use N threads to choose each move.
+     */
+    private void doThreads(Matcher mat) {
+        int threads;
+        try {
+            threads = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (threads < 1 || threads > MAX_THREADS) {
+            throw error("number of threads must be between 1 and %d",
+                        MAX_THREADS);
+        }
+        _threads = threads;
+    }
+
+    /**
+     * Command "depth N", where N is the first group of MAT: have automated
+     * players search exactly N moves ahead, ignoring the time limit, so
+     * that their moves are reproducible.  If N is 0, they search as deeply
+     * as their time limit allows.
+     */
+    private void doDepth(Matcher mat) {
+        try {
+            _searchDepth = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /**
+     * Command "eval [SIDE] NAME", where SIDE (the optional first group
+     * of MAT) is a side and NAME (the second group) names a kind of
+     * Evaluator: have automated players for SIDE, or for both sides if
+     * SIDE is absent, use that evaluation function.  Giving the two sides
+     * different evaluators pits them against each other.
+     */
+    private void doEval(Matcher mat) {
+        Evaluator evaluator = Evaluator.forName(mat.group(2));
+        if (evaluator == null) {
+            throw error("unknown evaluator: %s", mat.group(2));
+        }
+        if (!"black".equals(mat.group(1))) {
+            _whiteEvaluator = evaluator;
+        }
+        if (!"white".equals(mat.group(1))) {
+            _blackEvaluator = evaluator;
+        }
+    }
+
+    /**
+     * Command "evalcache N", where N is the first group of MAT: have
+     * automated players cache the values of up to 2**N positions per
+     * thread, so as not to evaluate them twice, or cache none if N is 0.
+     */
+    private void doEvalCache(Matcher mat) {
+        int bits;
+        try {
+            bits = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (bits > EvalCache.MAX_BITS) {
+            throw error("cache size must be at most 2**%d",
+                        EvalCache.MAX_BITS);
+        }
+        _evalCacheBits = bits;
+    }
+
+    /**
+     * Command "evalcache": report how well the automated players' caches
+     * of position values have served them.
+     */
+    private void doEvalCacheStats(Matcher unused) {
+        for (Player player : new Player[] { _white, _black }) {
+            String stats = player.evalCacheStats();
+            if (stats != null) {
+                reportNote("%s evaluation caches: %s",
+                           player.myPiece().toName(), stats);
+            }
+        }
+    }
+
+    /**
+     * Command "option NAME VALUE", where NAME and VALUE are the first and
+     * second groups of MAT: set the search option NAME (see
+     * SearchOptions) of automated players to VALUE.
+     */
+    private void doOption(Matcher mat) {
+        _searchOptions.set(mat.group(1), mat.group(2));
+    }
+
+    /**
+     * Command "put P S1 S2 ...", where P (the first group of MAT) is
+     * a piece name and the second group of MAT lists squares: place P
+     * on each of the squares, for setting up a starting position.
+     */
+    private void doPut(Matcher mat) {
+        Piece piece = Piece.valueOf(mat.group(1).toUpperCase());
+        for (String posn : mat.group(2).trim().split("\\s+")) {
+            _board.put(piece, Square.sq(posn));
+        }
+    }
+
     /**
      * Does the move.
      * @param mat matcher.
      */
     private void doMove(Matcher mat) {
-        String fromStrc = mat.group(1);
-        String fromStrr = mat.group(2);
-        String from = fromStrc + fromStrr;
-        String toStrc = mat.group(3);
-        String toStrr = mat.group(4);
-        String to = toStrc + toStrr;
-        String spearStrc = mat.group(5);
-        String spearStrr = mat.group(6);
-        String spear = spearStrc + spearStrr;
-        int fromIndex = (10 * (Integer.parseInt(fromStrr) - 1))
-                + (fromStrc.charAt(0) - 'a');
-        int toIndex = (10 * (Integer.parseInt(toStrr) - 1))
-                + (toStrc.charAt(0) - 'a');
-        int spearIndex = (10 * (Integer.parseInt(spearStrr) - 1))
-                + (spearStrc.charAt(0) - 'a');
-        Move movement = Move.mv(Square.sq(fromIndex),
-                Square.sq(toIndex), Square.sq(spearIndex));
-        if (_board.isLegal(movement)) {
+        Move movement = Move.mv(mat.group(0));
+        if (movement != null && _board.isLegal(movement)) {
             _board.makeMove(movement);
         } else {
             reportError("Invalid move.");
         }
-        if (_board.winner() != null) {
-            if (_board.winner() == BLACK) {
+        Piece winner = _board.winner();
+        if (winner != null) {
+            if (winner == BLACK) {
                 reportNote("Black wins.");
                 _winner = BLACK;
             } else {
@@ -338,6 +508,54 @@ final class Controller {
      */
     private Random _randGen = new Random();
 
+    /**
+     * The default value of _timeLimit.
+     */
+    static final long DEFAULT_TIME_LIMIT = 100;
+
+    /**
+     * Milliseconds allowed to automated players for each move.
+     */
+    private long _timeLimit = DEFAULT_TIME_LIMIT;
+
+    /**
+     * The largest number of threads allowed to automated players.
+     */
+    static final int MAX_THREADS = 64;
+
+    /**
+     * The initial value of _evalCacheBits.
+     */
+    static final int DEFAULT_EVAL_CACHE_BITS = 16;
+
+    /**
+     * Number of threads allowed to automated players.
+     */
+    private int _threads = 1;
+
+    /**
+     * Exact search depth for automated players, or 0 to use _timeLimit.
+     */
+    private int _searchDepth;
+
+    /**
+     * Templates for the evaluation functions of automated players for
+     * white and black.
+     */
+    private Evaluator _whiteEvaluator = new TerritoryEvaluator(),
+        _blackEvaluator = new TerritoryEvaluator();
+
+    /**
+     * Log2 of the number of evaluations automated players cache per
+     * thread, or 0 for none.
+     */
+    private int _evalCacheBits = DEFAULT_EVAL_CACHE_BITS;
+
+    /**
+     * Search options for automated players.
+     */
+    private final SearchOptions _searchOptions = new SearchOptions();
+
     /**
      * Log file, or null if absent.
      */
@@ -0,0 +1,395 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+
+/**
+ * An exact solver for positions in which the two sides are separated
+ * (see RegionMap).  From then on, neither side can hinder the other, and
+ * the game reduces to how many more moves each side can make: the side
+ * to move wins iff it can make more moves than its opponent.  A region
+ * with n empty squares usually allows n moves, but not always, since a
+ * badly shaped (defective) region can leave squares that an amazon can
+ * no longer reach.
+ *
+ * The solver groups each side's amazons with the empty squares around
+ * them into clusters of connected squares, and finds the longest
+ * sequence of moves within each cluster by depth-first search over the
+ * possible contents of the cluster.  Each state is a pair of bit masks
+ * over the cluster's squares (which empty squares remain, and where the
+ * amazons are), and the search memoizes the value of each state it
+ * finishes.  It stops early once it finds a sequence that fills every
+ * square it could reach, since none can be longer.  Clusters of more
+ * than MAX_SQUARES squares, and searches that would examine more than a
+ * given budget of states, are beyond the solver, which then gives up.
+ *
+ * @author Amol Pant
+ */
+final class EndgameSolver {
+
+    /**
+     * The largest number of squares (empty squares plus amazons) in a
+     * cluster the solver will handle.
+     */
+    static final int MAX_SQUARES = 64;
+
+    /**
+     * A solver that examines at most BUDGET states per call to solve.
+     * It memoizes up to 2**TABLEBITS states.
+     */
+    EndgameSolver(int budget, int tableBits) {
+        _budget = budget;
+        _emptyKeys = new long[1 << tableBits];
+        _amazonKeys = new long[1 << tableBits];
+        _values = new int[1 << tableBits];
+        _stamps = new int[1 << tableBits];
+        _tableMask = (1 << tableBits) - 1;
+    }
+
+    /**
+     * Solve the position on BOARD, if the sides are separated there and
+     * the position is within my limits, and return true iff I did so.
+     * Afterwards, moves(WHITE) and moves(BLACK) give the number of moves
+     * each side can still make, and bestMove() a move for the side to
+     * move that keeps its number of moves as large as possible.  Leaves
+     * BOARD as it found it.
+     */
+    boolean solve(Board board) {
+        Board copy = new Board(board);
+        copy.trackRegions(true);
+        if (!copy.regionMap().separated()) {
+            return false;
+        }
+        _states = 0;
+        _bestMove = NO_MOVE;
+        Piece turn = board.turn();
+        for (Piece side : new Piece[] { WHITE, BLACK }) {
+            int total = 0;
+            int[][] clusters = clusters(board, side);
+            for (int[] cluster : clusters) {
+                int best = solveCluster(board, cluster, side == turn);
+                if (best < 0) {
+                    return false;
+                }
+                total += best;
+            }
+            _moves[side == WHITE ? 0 : 1] = total;
+        }
+        return true;
+    }
+
+    /**
+     * Return the number of moves SIDE can still make, as found by the
+     * last successful call to solve.
+     */
+    int moves(Piece side) {
+        return _moves[side == WHITE ? 0 : 1];
+    }
+
+    /**
+     * Return the move (in packed form) found by the last successful call
+     * to solve for the side to move, or NO_MOVE if it has none.
+     */
+    int bestMove() {
+        return _bestMove;
+    }
+
+    /**
+     * Return the number of states examined by the last call to solve.
+     */
+    int states() {
+        return _states;
+    }
+
+    /**
+     * Return the clusters of SIDE's amazons on BOARD, on which the sides
+     * are separated, each as an array of the indices of its squares
+     * (amazons and empty squares).  A cluster is a set of squares, each
+     * empty or holding one of SIDE's amazons, connected through adjacent
+     * squares of the set, and containing at least one amazon.
+     */
+    private static int[][] clusters(Board board, Piece side) {
+        int n = Board.size() * Board.size();
+        int[] parent = new int[n];
+        for (int sq = 0; sq < n; sq += 1) {
+            Piece piece = board.get(sq);
+            parent[sq] = piece == EMPTY || piece == side ? sq : -1;
+        }
+        for (int sq = 0; sq < n; sq += 1) {
+            if (parent[sq] < 0) {
+                continue;
+            }
+            Square s = Square.sq(sq);
+            for (int dir = 0; dir < 8; dir += 1) {
+                int[] ray = s.ray(dir);
+                if (ray.length > 0 && parent[ray[0]] >= 0) {
+                    union(parent, sq, ray[0]);
+                }
+            }
+        }
+        int[] cluster = new int[n];
+        Arrays.fill(cluster, -1);
+        int clusters = 0;
+        for (int sq = 0; sq < n; sq += 1) {
+            if (board.get(sq) == side && cluster[find(parent, sq)] < 0) {
+                cluster[find(parent, sq)] = clusters;
+                clusters += 1;
+            }
+        }
+        int[] owner = new int[n], sizes = new int[clusters];
+        for (int sq = 0; sq < n; sq += 1) {
+            owner[sq] = parent[sq] < 0 ? -1 : cluster[find(parent, sq)];
+            if (owner[sq] >= 0) {
+                sizes[owner[sq]] += 1;
+            }
+        }
+        int[][] result = new int[clusters][];
+        for (int c = 0; c < clusters; c += 1) {
+            result[c] = new int[sizes[c]];
+            sizes[c] = 0;
+        }
+        for (int sq = 0; sq < n; sq += 1) {
+            int c = owner[sq];
+            if (c >= 0) {
+                result[c][sizes[c]] = sq;
+                sizes[c] += 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the representative of SQ's set in PARENT.
+     */
+    private static int find(int[] parent, int sq) {
+        while (parent[sq] != sq) {
+            parent[sq] = parent[parent[sq]];
+            sq = parent[sq];
+        }
+        return sq;
+    }
+
+    /**
+     * Merge the sets of A and B in PARENT.
+     */
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a != b) {
+            parent[Math.max(a, b)] = Math.min(a, b);
+        }
+    }
+
+    /**
+     * Return the number of moves the amazons of CLUSTER (as for clusters)
+     * on BOARD can still make, or -1 if that is beyond my limits.  If
+     * TOMOVE, and no move has yet been chosen, sets _bestMove to a first
+     * move of a longest sequence.
+     */
+    private int solveCluster(Board board, int[] cluster, boolean toMove) {
+        int m = cluster.length;
+        if (m > MAX_SQUARES) {
+            return -1;
+        }
+        int[] local = new int[Board.size() * Board.size()];
+        Arrays.fill(local, -1);
+        long empty = 0, amazons = 0;
+        for (int i = 0; i < m; i += 1) {
+            local[cluster[i]] = i;
+            if (board.get(cluster[i]) == EMPTY) {
+                empty |= 1L << i;
+            } else {
+                amazons |= 1L << i;
+            }
+        }
+        _rays = new int[m][8][];
+        _neighbors = new long[m];
+        for (int i = 0; i < m; i += 1) {
+            Square s = Square.sq(cluster[i]);
+            for (int dir = 0; dir < 8; dir += 1) {
+                int[] ray = s.ray(dir);
+                int len = 0;
+                while (len < ray.length && local[ray[len]] >= 0) {
+                    len += 1;
+                }
+                _rays[i][dir] = new int[len];
+                for (int k = 0; k < len; k += 1) {
+                    _rays[i][dir][k] = local[ray[k]];
+                }
+                if (len > 0) {
+                    _neighbors[i] |= 1L << _rays[i][dir][0];
+                }
+            }
+        }
+        _stamp += 1;
+        _exhausted = false;
+        _rootMove = NO_MOVE;
+        int best = longest(empty, amazons, true);
+        if (_exhausted) {
+            return -1;
+        }
+        if (toMove && best > 0 && _bestMove == NO_MOVE) {
+            _bestMove = Move.pack(cluster[Move.from(_rootMove)],
+                                  cluster[Move.to(_rootMove)],
+                                  cluster[Move.spear(_rootMove)]);
+        }
+        return best;
+    }
+
+    /**
+     * Return the length of the longest sequence of moves by the amazons
+     * at the local squares in AMAZONS, with the local squares in EMPTY
+     * empty.  If ROOT, sets _rootMove to the first move (packed, in local
+     * squares) of such a sequence.  Sets _exhausted and returns a
+     * meaningless value if that takes more than _budget states in all.
+     */
+    private int longest(long empty, long amazons, boolean root) {
+        int slot = slot(empty, amazons);
+        if (!root && _stamps[slot] == _stamp && _emptyKeys[slot] == empty
+            && _amazonKeys[slot] == amazons) {
+            return _values[slot];
+        }
+        if (_states >= _budget) {
+            _exhausted = true;
+            return 0;
+        }
+        _states += 1;
+        int bound = bound(empty, amazons), best = 0;
+        for (long a = amazons; a != 0 && best < bound; a &= a - 1) {
+            int from = Long.numberOfTrailingZeros(a);
+            for (int dir = 0; dir < 8 && best < bound; dir += 1) {
+                for (int to : _rays[from][dir]) {
+                    if ((empty & 1L << to) == 0 || best == bound) {
+                        break;
+                    }
+                    long moved = amazons ^ 1L << from ^ 1L << to;
+                    long vacated = empty ^ 1L << to ^ 1L << from;
+                    for (int dir2 = 0; dir2 < 8 && best < bound;
+                         dir2 += 1) {
+                        for (int spear : _rays[to][dir2]) {
+                            if ((vacated & 1L << spear) == 0) {
+                                break;
+                            }
+                            int value = 1 + longest(vacated ^ 1L << spear,
+                                                    moved, false);
+                            if (_exhausted) {
+                                return 0;
+                            }
+                            if (value > best) {
+                                best = value;
+                                if (root) {
+                                    _rootMove = Move.pack(from, to, spear);
+                                }
+                            }
+                            if (best == bound) {
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        _emptyKeys[slot] = empty;
+        _amazonKeys[slot] = amazons;
+        _values[slot] = best;
+        _stamps[slot] = _stamp;
+        return best;
+    }
+
+    /**
+     * Return an upper bound on longest(EMPTY, AMAZONS, ...): the number of
+     * empty squares, less those next to no empty square or amazon, which
+     * no amazon can ever reach.
+     */
+    private int bound(long empty, long amazons) {
+        long open = empty | amazons;
+        int bound = 0;
+        for (long e = empty; e != 0; e &= e - 1) {
+            if ((_neighbors[Long.numberOfTrailingZeros(e)] & open) != 0) {
+                bound += 1;
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Return the slot in the memo table for the state EMPTY and AMAZONS,
+     * which holds that state if it is there.  A new state replaces
+     * whatever is in its slot.
+     */
+    private int slot(long empty, long amazons) {
+        long h = empty * HASH_MULTIPLIER ^ amazons * HASH_MULTIPLIER2;
+        return (int) (h ^ (h >>> 32)) & _tableMask;
+    }
+
+    /**
+     * Odd constants for mixing the bits of states into slot numbers.
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L,
+        HASH_MULTIPLIER2 = 0xC2B2AE3D27D4EB4FL;
+
+    /**
+     * A move value denoting no move.
+     */
+    private static final int NO_MOVE = TranspositionTable.NO_MOVE;
+
+    /**
+     * The largest number of states to examine per call to solve.
+     */
+    private final int _budget;
+    /**
+     * The number of states examined so far by the current call to solve.
+     */
+    private int _states;
+    /**
+     * True iff the current cluster's search has run out of budget.
+     */
+    private boolean _exhausted;
+    /**
+     * The numbers of moves left to white and black.
+     */
+    private final int[] _moves = new int[2];
+    /**
+     * The move chosen for the side to move, or NO_MOVE.
+     */
+    private int _bestMove;
+    /**
+     * The first move of a longest sequence in the current cluster, packed
+     * in local squares.
+     */
+    private int _rootMove;
+    /**
+     * _rays[i][dir] lists the local squares of the current cluster along
+     * the ray from local square i in direction dir, up to the first
+     * square outside the cluster.
+     */
+    private int[][][] _rays;
+    /**
+     * _neighbors[i] is the set of local squares of the current cluster
+     * adjacent to local square i.
+     */
+    private long[] _neighbors;
+    /**
+     * The memo table: the state in each slot is (_emptyKeys[slot],
+     * _amazonKeys[slot]), its value is _values[slot], and the slot is in
+     * use for the current cluster iff _stamps[slot] == _stamp.
+     */
+    private final long[] _emptyKeys, _amazonKeys;
+    /**
+     * Values of the states in the memo table.
+     */
+    private final int[] _values;
+    /**
+     * Generation stamps of the slots in the memo table.
+     */
+    private final int[] _stamps;
+    /**
+     * The current generation stamp.
+     */
+    private int _stamp;
+    /**
+     * Mask selecting a slot from a hash.
+     */
+    private final int _tableMask;
+}
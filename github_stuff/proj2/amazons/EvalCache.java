@@ -0,0 +1,168 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Utils.error;
+
+/**
+ * A fixed-size cache of static evaluations, indexed by position keys
+ * (see Board.key), so that a Searcher need not evaluate the same position
+ * twice, whether it meets it again through a transposition or in a later
+ * iteration of iterative deepening.  The cache is direct-mapped: each key
+ * has one slot, and a new value simply replaces the old one.  Each slot is
+ * one long, holding bits of the key that the slot number does not
+ * already determine, to verify that an entry is for the position being
+ * looked up, and the score.
+ *
+ * Each cache belongs to one thread (one Searcher), and is not safe for
+ * use by several threads at once.  A cache counts its hits and misses,
+ * for measuring how well it serves.
+ *
+ * @author Amol Pant
+ */
+final class EvalCache {
+
+    /**
+     * The value returned by probe for positions not in the cache.  No
+     * evaluation has this value.
+     */
+    static final int MISSING = Integer.MIN_VALUE;
+
+    /**
+     * The largest permitted log2 of the number of entries.
+     */
+    static final int MAX_BITS = 28;
+
+    /**
+     * A cache with 2**BITS entries.  BITS must be between 1 and MAX_BITS.
+     */
+    EvalCache(int bits) {
+        if (bits < 1 || bits > MAX_BITS) {
+            throw error("bad cache size: %d", bits);
+        }
+        _cache = new long[1 << bits];
+        _mask = (1 << bits) - 1;
+    }
+
+    /**
+     * Return the number of entries in this cache.
+     */
+    int size() {
+        return _cache.length;
+    }
+
+    /**
+     * Remove all entries, and reset the counts of hits and misses.
+     */
+    void clear() {
+        Arrays.fill(_cache, 0);
+        _hits = _misses = 0;
+    }
+
+    /**
+     * Return the evaluation recorded for the position with key KEY, or
+     * MISSING if there is none.
+     */
+    int probe(long key) {
+        long entry = _cache[index(key)];
+        if ((entry & CHECK_MASK) == check(key)) {
+            _hits += 1;
+            return (int) entry;
+        }
+        _misses += 1;
+        return MISSING;
+    }
+
+    /**
+     * Record that the position with key KEY evaluates to SCORE.
+     */
+    void store(long key, int score) {
+        _cache[index(key)] = check(key) | (score & SCORE_MASK);
+    }
+
+    /**
+     * Return the number of calls to probe that found an entry.
+     */
+    long hits() {
+        return _hits;
+    }
+
+    /**
+     * Return the number of calls to probe that found none.
+     */
+    long misses() {
+        return _misses;
+    }
+
+    /**
+     * Return the fraction of calls to probe that found an entry, or 0 if
+     * there have been none.
+     */
+    double hitRate() {
+        long probes = _hits + _misses;
+        return probes == 0 ? 0.0 : (double) _hits / probes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d entries, %d hits, %d misses (%.1f%% hits)",
+                             size(), _hits, _misses, 100.0 * hitRate());
+    }
+
+    /**
+     * Return a description of the combined hits and misses of CACHES, as
+     * for toString.
+     */
+    static String summary(Iterable<EvalCache> caches) {
+        int count = 0;
+        long hits = 0, misses = 0;
+        for (EvalCache cache : caches) {
+            count += 1;
+            hits += cache._hits;
+            misses += cache._misses;
+        }
+        long probes = hits + misses;
+        return String.format("%d caches, %d hits, %d misses (%.1f%% hits)",
+                             count, hits, misses,
+                             probes == 0 ? 0.0 : 100.0 * hits / probes);
+    }
+
+    /**
+     * Return the index in _cache of the slot for KEY.
+     */
+    private int index(long key) {
+        return (int) key & _mask;
+    }
+
+    /**
+     * Return the verification bits for KEY, in their place in an entry.
+     * These are the upper half of KEY, with the low bit set so that an
+     * empty slot never matches.
+     */
+    private static long check(long key) {
+        return (key | (1L << 32)) & CHECK_MASK;
+    }
+
+    /**
+     * Mask for the verification bits of an entry.
+     */
+    private static final long CHECK_MASK = 0xffffffffL << 32;
+    /**
+     * Mask for the score in an entry.
+     */
+    private static final long SCORE_MASK = 0xffffffffL;
+
+    /**
+     * The entries.
+     */
+    private final long[] _cache;
+    /**
+     * Mask selecting a slot number from a key.
+     */
+    private final int _mask;
+    /**
+     * The numbers of calls to probe that found and did not find an
+     * entry since I was created or last cleared.
+     */
+    private long _hits, _misses;
+}
@@ -0,0 +1,49 @@
+package amazons;
+
+/**
+ * A static evaluation function, used by Searcher to estimate the value
+ * of positions at the leaves of its search.  Implementations may keep
+ * scratch space, so each Searcher (and thus each thread) uses its own
+ * Evaluator, made from a template by create.
+ *
+ * @author Amol Pant
+ */
+interface Evaluator {
+
+    /**
+     * Return a heuristic value for BOARD, on which the game is not over:
+     * positive if it favors white, negative if it favors black, and of
+     * magnitude less than Searcher.WINNING_VALUE.  Does not change the
+     * position on BOARD, though it may start BOARD maintaining
+     * information about it.
+     */
+    int evaluate(Board board);
+
+    /**
+     * A factory method that returns a new Evaluator with my concrete type
+     * and parameters.
+     */
+    Evaluator create();
+
+    /**
+     * Return the name by which I am selected (see forName).
+     */
+    String name();
+
+    /**
+     * Return a new Evaluator of the kind called NAME ("mobility",
+     * "territory" or "incremental"), or null if there is no such kind.
+     */
+    static Evaluator forName(String name) {
+        switch (name) {
+        case MobilityEvaluator.NAME:
+            return new MobilityEvaluator();
+        case TerritoryEvaluator.NAME:
+            return new TerritoryEvaluator();
+        case IncrementalEvaluator.NAME:
+            return new IncrementalEvaluator();
+        default:
+            return null;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package amazons;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+import static amazons.Piece.*;
+
+/**
+ * Tests of the Evaluator classes.
+ *
+ * @author Amol Pant
+ */
+public class EvaluatorTest {
+
+    @Test
+    public void forNameTests() {
+        assertEquals("mobility", Evaluator.forName("mobility").name());
+        assertEquals("territory", Evaluator.forName("territory").name());
+        assertNull(Evaluator.forName("material"));
+        Evaluator eval = new TerritoryEvaluator();
+        assertTrue(eval.create() instanceof TerritoryEvaluator);
+        assertTrue(eval.create() != eval);
+    }
+
+    @Test
+    public void territoryTests() {
+        Evaluator eval = new TerritoryEvaluator();
+        Board b = new Board();
+        int start = eval.evaluate(b);
+        assertTrue(start >= 0);
+
+        for (char c = 'a'; c <= 'j'; c += 1) {
+            b.put(SPEAR, Square.sq(c + "5"));
+        }
+        assertEquals(36 * 64 - 46 * 64, eval.evaluate(b));
+
+        b = new Board();
+        for (String sq : new String[] { "a6", "b6", "b7", "a8", "b8" }) {
+            b.put(SPEAR, Square.sq(sq));
+        }
+        assertTrue(eval.evaluate(b) > start);
+        assertEquals(eval.evaluate(b), eval.evaluate(b));
+    }
+
+    @Test
+    public void incrementalTests() {
+        Evaluator scratch = new TerritoryEvaluator(),
+            incremental = new IncrementalEvaluator();
+        Board b = new Board();
+        Random rand = new Random(99);
+        int[] moves = new int[b.maxMoves()];
+        while (b.winner() == null) {
+            assertEquals(scratch.evaluate(b), incremental.evaluate(b));
+            int n = b.generateMoves(b.turn(), moves);
+            for (int k = 0; k < 3; k += 1) {
+                b.makeMove(moves[rand.nextInt(n)]);
+                if (b.winner() == null) {
+                    assertEquals(scratch.evaluate(b),
+                                 incremental.evaluate(b));
+                }
+                b.undo();
+            }
+            b.makeMove(moves[rand.nextInt(n)]);
+        }
+    }
+
+    @Test
+    public void sizeChangeTests() {
+        Evaluator eval = new TerritoryEvaluator();
+        eval.evaluate(new Board());
+        try {
+            Board.setSize(6);
+            Board b = new Board();
+            assertTrue(Math.abs(eval.evaluate(b)) < Searcher.WINNING_VALUE);
+        } finally {
+            Board.setSize(Board.DEFAULT_SIZE);
+        }
+    }
+}
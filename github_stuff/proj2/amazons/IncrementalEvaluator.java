@@ -0,0 +1,46 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/**
+ * An Evaluator giving the same values as TerritoryEvaluator, but from a
+ * TerritoryMap and MobilityMap that the Board keeps up to date as moves
+ * are made and undone, rather than by searching the whole board at each
+ * leaf.  The first evaluation of a Board starts it tracking both (see
+ * Board.trackTerritory and Board.trackMobility); later ones cost only
+ * the updates for the moves made since.
+ *
+ * @author Amol Pant
+ */
+final class IncrementalEvaluator implements Evaluator {
+
+    /**
+     * My name.
+     */
+    static final String NAME = "incremental";
+
+    @Override
+    public int evaluate(Board board) {
+        board.trackTerritory(true);
+        board.trackMobility(true);
+        TerritoryMap territory = board.territoryMap();
+        MobilityMap mobility = board.mobilityMap();
+        int tempo = TerritoryEvaluator.tempo(board.turn());
+        return TerritoryEvaluator.value(
+            territory.queenTerritory() + tempo * territory.queenTies(),
+            territory.kingTerritory() + tempo * territory.kingTies(),
+            territory.position(), territory.contact(),
+            mobility.mobility(WHITE) - mobility.mobility(BLACK),
+            board.numEmpty());
+    }
+
+    @Override
+    public Evaluator create() {
+        return new IncrementalEvaluator();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+}
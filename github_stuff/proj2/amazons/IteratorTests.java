@@ -49,9 +49,9 @@ public class IteratorTests {
     }
 
     private void buildBoard(Board b, Piece[][] target) {
-        for (int col = 0; col < Board.SIZE; col++) {
-            for (int row = Board.SIZE - 1; row >= 0; row--) {
-                Piece piece = target[Board.SIZE - row - 1][col];
+        for (int col = 0; col < Board.size(); col++) {
+            for (int row = Board.size() - 1; row >= 0; row--) {
+                Piece piece = target[Board.size() - row - 1][col];
                 b.put(piece, Square.sq(col, row));
             }
         }
@@ -0,0 +1,100 @@
+package amazons;
+
+import java.util.Random;
+
+/**
+ * A Player that chooses moves by Monte Carlo tree search (see MCTSTree),
+ * as an alternative to the alpha-beta search of AI.  It searches for the
+ * time limit set in its Controller, using the Controller's number of
+ * threads, and keeps the part of its tree that is still relevant from
+ * one move to the next.
+ *
+ * @author Amol Pant
+ */
+class MCTSPlayer extends Player {
+
+    /**
+     * A new MCTSPlayer with no piece or controller (intended to produce
+     * a template).
+     */
+    MCTSPlayer() {
+        this(null, null);
+    }
+
+    /**
+     * A new MCTSPlayer playing PIECE under control of CONTROLLER.
+     */
+    MCTSPlayer(Piece piece, Controller controller) {
+        super(piece, controller);
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new MCTSPlayer(piece, controller);
+    }
+
+    @Override
+    String myMove() {
+        Move move = Move.mv(findMove());
+        _controller.reportMove(move);
+        return move.toString();
+    }
+
+    /**
+     * Return a move (in packed form) for me from the current position,
+     * assuming there is a move.
+     */
+    private int findMove() {
+        if (_tree == null) {
+            _tree = new MCTSTree(TREE_SIZE);
+        }
+        _tree.moveTo(board());
+        long deadline = System.currentTimeMillis() + _controller.timeLimit();
+        int threads = _controller.threads();
+        Thread[] helpers = new Thread[threads - 1];
+        for (int i = 1; i < threads; i += 1) {
+            Random rand = new Random(_controller.randInt(Integer.MAX_VALUE));
+            helpers[i - 1] = new Thread(() -> run(rand, deadline));
+            helpers[i - 1].setDaemon(true);
+            helpers[i - 1].start();
+        }
+        run(new Random(_controller.randInt(Integer.MAX_VALUE)), deadline);
+        for (Thread helper : helpers) {
+            while (helper.isAlive()) {
+                try {
+                    helper.join();
+                } catch (InterruptedException excp) {
+                    /* Ignore: we must wait for the helpers. */
+                }
+            }
+        }
+        int move = _tree.bestMove();
+        _tree.advance(move);
+        return move;
+    }
+
+    /**
+     * Run iterations of _tree using random choices from RAND until the
+     * time (as for System.currentTimeMillis) reaches DEADLINE, always
+     * running at least one.
+     */
+    private void run(Random rand, long deadline) {
+        Board board = _tree.position();
+        int[] buf = new int[_tree.bufferSize()];
+        int[] path = new int[_tree.pathSize()];
+        do {
+            _tree.iterate(board, rand, buf, path);
+        } while (System.currentTimeMillis() < deadline);
+    }
+
+    /**
+     * The number of nodes my tree can hold.
+     */
+    private static final int TREE_SIZE = 1 << 18;
+
+    /**
+     * My search tree, rooted at the position after my last move, or null
+     * before my first move.
+     */
+    private MCTSTree _tree;
+}
@@ -0,0 +1,500 @@
+package amazons;
+
+import java.util.Random;
+
+/**
+ * A game tree for Monte Carlo tree search (UCT) from some root position.
+ * Each move is split into two stages: a queen move, chosen at a queen
+ * node, and then a spear throw, chosen at a spear node.  The children of
+ * a node are added one at a time (progressive widening): a node may have
+ * about sqrt(N) children after N visits, so that the search is not
+ * swamped by the hundreds of queen moves and dozens of spear throws
+ * available at each stage.
+ *
+ * Nodes live in an arena of parallel int arrays, indexed by node number,
+ * so that a tree of any size costs a fixed amount of memory and no
+ * allocation.  When the arena is full, the tree stops growing, and
+ * iterations simply continue to refine the statistics of existing nodes.
+ *
+ * Several threads may run iterations at once.  They take turns choosing
+ * paths through the tree and recording results, but do their random
+ * playouts in parallel.  Visits are counted as a path is chosen, and wins
+ * only when the playout is finished, so that a node with playouts in
+ * progress looks worse to other threads (a "virtual loss") and they
+ * explore elsewhere.
+ *
+ * @author Amol Pant
+ */
+final class MCTSTree {
+
+    /**
+     * A move value denoting no move.
+     */
+    static final int NO_MOVE = TranspositionTable.NO_MOVE;
+
+    /**
+     * A tree with room for CAPACITY nodes, initially rooted at the
+     * standard initial position.
+     */
+    MCTSTree(int capacity) {
+        _nodes = new Arena(capacity);
+        _spare = new Arena(capacity);
+        _order = new int[capacity];
+        reset(new Board());
+    }
+
+    /**
+     * Discard the whole tree, and make BOARD the root position.
+     */
+    synchronized void reset(Board board) {
+        _position = new Board(board);
+        _size = 0;
+        _root = newNode(NO_MOVE);
+    }
+
+    /**
+     * Move the root of the tree to the position on BOARD, keeping the
+     * subtree for that position, if BOARD is the root position itself or
+     * follows from it by one move.  Otherwise, reset the tree to BOARD.
+     */
+    synchronized void moveTo(Board board) {
+        if (board.numMoves() == _position.numMoves() + 1
+            && _position.isLegal(board.lastMove())) {
+            advance(board.lastMove());
+        }
+        if (board.numMoves() != _position.numMoves()
+            || board.key() != _position.key()
+            || board.turn() != _position.turn()) {
+            reset(board);
+        }
+    }
+
+    /**
+     * Move the root of the tree to the position after legal move MOVE
+     * (in packed form) from the root position, keeping the subtree for
+     * that position, if any.
+     */
+    synchronized void advance(int move) {
+        int queen = child(_root, Move.pack(Move.from(move), Move.to(move), 0));
+        int next = queen == NO_NODE ? NO_NODE
+            : child(queen, Move.spear(move));
+        _position.makeMove(move);
+        if (next == NO_NODE) {
+            _size = 0;
+            _root = newNode(NO_MOVE);
+        } else {
+            reroot(next);
+        }
+    }
+
+    /**
+     * Return a copy of the root position.
+     */
+    synchronized Board position() {
+        return new Board(_position);
+    }
+
+    /**
+     * Return the number of nodes in the tree.
+     */
+    synchronized int size() {
+        return _size;
+    }
+
+    /**
+     * Return the number of iterations through the root, including any
+     * still in progress.
+     */
+    synchronized int visits() {
+        return _nodes._visits[_root];
+    }
+
+    /**
+     * Perform one iteration of the search: choose a path from the root,
+     * adding a node to the tree, play the game out randomly from there,
+     * and record the result along the path.  BOARD must contain the root
+     * position, and is left as it was found.  RAND supplies random
+     * choices.  BUF and PATH are scratch space: BUF must have room for
+     * bufferSize() moves, and PATH for pathSize() nodes.
+     */
+    void iterate(Board board, Random rand, int[] buf, int[] path) {
+        int start = board.numMoves();
+        int len;
+        synchronized (this) {
+            len = descend(board, rand, buf, path);
+        }
+        Piece winner = playout(board, rand, buf);
+        synchronized (this) {
+            Piece mover = _position.turn();
+            for (int k = 1; k < len; k += 2) {
+                if (mover == winner) {
+                    _nodes._wins[path[k]] += 1;
+                    if (k + 1 < len) {
+                        _nodes._wins[path[k + 1]] += 1;
+                    }
+                }
+                mover = mover.opponent();
+            }
+        }
+        while (board.numMoves() > start) {
+            board.undo();
+        }
+    }
+
+    /**
+     * Return the size needed for the buffer passed to iterate.
+     */
+    int bufferSize() {
+        return _position.maxQueenMoves() + 4 * Board.size();
+    }
+
+    /**
+     * Return the size needed for the path passed to iterate.
+     */
+    int pathSize() {
+        return 2 * _position.numEmpty() + 2;
+    }
+
+    /**
+     * Return the best move (in packed form) from the root position: the
+     * most visited spear throw after the most visited queen move, or
+     * NO_MOVE if the game is over.
+     */
+    synchronized int bestMove() {
+        int queen = mostVisited(_root);
+        int from, to;
+        if (queen == NO_NODE) {
+            int[] buf = new int[_position.maxQueenMoves()];
+            if (_position.generateQueenMoves(_position.turn(), buf) == 0) {
+                return NO_MOVE;
+            }
+            from = Move.from(buf[0]);
+            to = Move.to(buf[0]);
+        } else {
+            from = Move.from(_nodes._move[queen]);
+            to = Move.to(_nodes._move[queen]);
+        }
+        int spear = queen == NO_NODE ? NO_NODE : mostVisited(queen);
+        if (spear != NO_NODE) {
+            return Move.pack(from, to, _nodes._move[spear]);
+        }
+        int[] spears = new int[4 * Board.size()];
+        _position.generateSpears(from, to, spears);
+        return Move.pack(from, to, spears[0]);
+    }
+
+    /**
+     * Choose a path from the root for an iteration, making the moves
+     * along it on BOARD, and store the nodes on it in PATH, returning
+     * its length.  Counts a visit to each node on the path.  Stops after
+     * adding a new node, on reaching a position where the game is over,
+     * or on reaching a node without children when the arena is full.  If
+     * the path ends at a spear node, throws a random spear (using RAND),
+     * so that BOARD always ends at the start of a move.  BUF is as for
+     * iterate.
+     */
+    private int descend(Board board, Random rand, int[] buf, int[] path) {
+        Arena a = _nodes;
+        int node = _root, len = 0, queen = NO_MOVE;
+        boolean expanded = false;
+        path[len] = node;
+        len += 1;
+        a._visits[node] += 1;
+        while (!expanded) {
+            if (a._candidates[node] < 0) {
+                a._candidates[node] = candidates(board, queen, buf);
+            }
+            int allowed = Math.min(a._candidates[node],
+                                   (int) (WIDENING
+                                          * Math.sqrt(a._visits[node])) + 1);
+            int child;
+            if (a._childCount[node] < allowed && _size < a._move.length) {
+                child = expand(board, rand, buf, node, queen);
+                expanded = true;
+            } else if (a._childCount[node] > 0) {
+                child = select(node);
+            } else {
+                break;
+            }
+            a._visits[child] += 1;
+            path[len] = child;
+            len += 1;
+            if (queen == NO_MOVE) {
+                queen = a._move[child];
+            } else {
+                board.makeMove(Move.pack(Move.from(queen), Move.to(queen),
+                                         a._move[child]));
+                queen = NO_MOVE;
+            }
+            node = child;
+        }
+        if (queen != NO_MOVE) {
+            int from = Move.from(queen), to = Move.to(queen);
+            int n = board.generateSpears(from, to, buf);
+            board.makeMove(Move.pack(from, to, buf[rand.nextInt(n)]));
+        }
+        return len;
+    }
+
+    /**
+     * Store the choices available at a node with position BOARD in BUF,
+     * returning their number: the queen moves of the side to move if
+     * QUEEN is NO_MOVE, and otherwise the spear throws after queen move
+     * QUEEN.
+     */
+    private static int candidates(Board board, int queen, int[] buf) {
+        if (queen == NO_MOVE) {
+            return board.generateQueenMoves(board.turn(), buf);
+        } else {
+            return board.generateSpears(Move.from(queen), Move.to(queen),
+                                        buf);
+        }
+    }
+
+    /**
+     * Add to NODE, whose position is on BOARD and which is a queen node
+     * if QUEEN is NO_MOVE and otherwise a spear node following queen move
+     * QUEEN, a child for a randomly chosen (using RAND) choice not yet
+     * represented among its children, and return the new child.  NODE
+     * must have such a choice.  BUF is as for iterate.
+     */
+    private int expand(Board board, Random rand, int[] buf, int node,
+                       int queen) {
+        Arena a = _nodes;
+        int n = candidates(board, queen, buf);
+        for (int c = a._firstChild[node]; c != NO_NODE; c = a._sibling[c]) {
+            for (int k = 0; k < n; k += 1) {
+                if (buf[k] == a._move[c]) {
+                    n -= 1;
+                    buf[k] = buf[n];
+                    break;
+                }
+            }
+        }
+        int child = newNode(buf[rand.nextInt(n)]);
+        a._sibling[child] = a._firstChild[node];
+        a._firstChild[node] = child;
+        a._childCount[node] += 1;
+        return child;
+    }
+
+    /**
+     * Return the child of NODE with the greatest upper confidence bound
+     * on its value to the player choosing it.
+     */
+    private int select(int node) {
+        Arena a = _nodes;
+        double logVisits = Math.log(a._visits[node]);
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int best = NO_NODE;
+        for (int c = a._firstChild[node]; c != NO_NODE; c = a._sibling[c]) {
+            double visits = a._visits[c];
+            double value = a._wins[c] / visits
+                + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return the most visited child of NODE, or NO_NODE if it has none.
+     */
+    private int mostVisited(int node) {
+        Arena a = _nodes;
+        int best = NO_NODE;
+        for (int c = a._firstChild[node]; c != NO_NODE; c = a._sibling[c]) {
+            if (best == NO_NODE || a._visits[c] > a._visits[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return the child of NODE reached by choice MOVE, or NO_NODE if
+     * there is none.
+     */
+    private int child(int node, int move) {
+        Arena a = _nodes;
+        for (int c = a._firstChild[node]; c != NO_NODE; c = a._sibling[c]) {
+            if (a._move[c] == move) {
+                return c;
+            }
+        }
+        return NO_NODE;
+    }
+
+    /**
+     * Play random moves on BOARD, using RAND, until the game is over, and
+     * return the winner.  Picks a queen move at random, then a spear
+     * throw, which is much cheaper than picking among whole moves.  BUF
+     * is as for iterate.
+     */
+    private static Piece playout(Board board, Random rand, int[] buf) {
+        while (true) {
+            Piece side = board.turn();
+            int n = board.generateQueenMoves(side, buf);
+            if (n == 0) {
+                return side.opponent();
+            }
+            int queen = buf[rand.nextInt(n)];
+            int from = Move.from(queen), to = Move.to(queen);
+            n = board.generateSpears(from, to, buf);
+            board.makeMove(Move.pack(from, to, buf[rand.nextInt(n)]));
+        }
+    }
+
+    /**
+     * Add a new childless node reached by choice MOVE and return it.  The
+     * arena must not be full.
+     */
+    private int newNode(int move) {
+        Arena a = _nodes;
+        int node = _size;
+        _size += 1;
+        a._move[node] = move;
+        a._firstChild[node] = NO_NODE;
+        a._sibling[node] = NO_NODE;
+        a._childCount[node] = 0;
+        a._candidates[node] = -1;
+        a._visits[node] = 0;
+        a._wins[node] = 0;
+        return node;
+    }
+
+    /**
+     * Make ROOT the root of the tree, discarding all nodes not below it.
+     * Copies the subtree to the spare arena, in breadth-first order, and
+     * then swaps arenas.
+     */
+    private void reroot(int root) {
+        Arena from = _nodes, to = _spare;
+        int count = 1;
+        _order[0] = root;
+        to._sibling[0] = NO_NODE;
+        for (int i = 0; i < count; i += 1) {
+            int old = _order[i];
+            to._move[i] = from._move[old];
+            to._childCount[i] = from._childCount[old];
+            to._candidates[i] = from._candidates[old];
+            to._visits[i] = from._visits[old];
+            to._wins[i] = from._wins[old];
+            to._firstChild[i] = NO_NODE;
+            for (int c = from._firstChild[old]; c != NO_NODE;
+                 c = from._sibling[c]) {
+                if (to._firstChild[i] == NO_NODE) {
+                    to._firstChild[i] = count;
+                } else {
+                    to._sibling[count - 1] = count;
+                }
+                to._sibling[count] = NO_NODE;
+                _order[count] = c;
+                count += 1;
+            }
+        }
+        _nodes = to;
+        _spare = from;
+        _size = count;
+        _root = 0;
+    }
+
+    /**
+     * The nodes of a tree, stored in parallel arrays indexed by node.
+     */
+    private static final class Arena {
+
+        /**
+         * An arena with room for CAPACITY nodes.
+         */
+        Arena(int capacity) {
+            _move = new int[capacity];
+            _firstChild = new int[capacity];
+            _sibling = new int[capacity];
+            _childCount = new int[capacity];
+            _candidates = new int[capacity];
+            _visits = new int[capacity];
+            _wins = new int[capacity];
+        }
+
+        /**
+         * The choice leading to each node: a queen move (packed as by
+         * Move.pack, with spear 0) for a spear node, and a spear square
+         * for a queen node.
+         */
+        private final int[] _move;
+        /**
+         * Each node's most recently added child, or NO_NODE.
+         */
+        private final int[] _firstChild;
+        /**
+         * The next older child of each node's parent, or NO_NODE.
+         */
+        private final int[] _sibling;
+        /**
+         * The number of children of each node.
+         */
+        private final int[] _childCount;
+        /**
+         * The number of choices at each node, or -1 if not yet known.
+         */
+        private final int[] _candidates;
+        /**
+         * The number of iterations through each node.
+         */
+        private final int[] _visits;
+        /**
+         * The number of finished iterations through each node won by the
+         * player who made the choice leading to it.
+         */
+        private final int[] _wins;
+    }
+
+    /**
+     * A node number denoting no node.
+     */
+    private static final int NO_NODE = -1;
+
+    /**
+     * Multiplier of the square root of a node's visits in the number of
+     * children it may have.
+     */
+    private static final double WIDENING = 1.0;
+
+    /**
+     * The UCT exploration constant.
+     */
+    private static final double EXPLORATION = 0.7;
+
+    /**
+     * The arena holding my nodes.
+     */
+    private Arena _nodes;
+
+    /**
+     * An arena of the same size, into which reroot copies subtrees.
+     */
+    private Arena _spare;
+
+    /**
+     * Scratch space for reroot.
+     */
+    private final int[] _order;
+
+    /**
+     * The number of nodes in use in _nodes.
+     */
+    private int _size;
+
+    /**
+     * The root node.
+     */
+    private int _root;
+
+    /**
+     * The root position.
+     */
+    private Board _position;
+}
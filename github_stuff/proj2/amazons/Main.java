@@ -15,16 +15,29 @@ import ucb.util.CommandArgs;
  */
 public class Main {
 
-    /** The main program.  ARGS may contain the option --display. */
+    /** The main program.  ARGS may contain the option --display,
+     *  --size=N to play on an NxN board, and --mcts to have automated
+     *  players use Monte Carlo tree search. */
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --log={0,1} --={0,2}", args);
+            new CommandArgs("--display --log={0,1} --size=(\\d+){0,1}"
+                            + " --mcts --={0,2}", args);
         if (!options.ok()) {
             System.err.println("Usage: java amazons.Main [--display]"
-                               + " [--log=FILE] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--size=N] [--mcts]"
+                               + " [INPUT [OUTPUT]]");
             System.exit(1);
         }
+        if (options.contains("--size")) {
+            try {
+                Board.setSize(Integer.parseInt(options.getFirst("--size")));
+            } catch (IllegalArgumentException excp) {
+                System.err.printf("Invalid board size: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
 
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
@@ -83,6 +96,8 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer, new AI());
+        Player autoPlayer =
+            options.contains("--mcts") ? new MCTSPlayer() : new AI();
+        return new Controller(view, log, reporter, manualPlayer, autoPlayer);
     }
 }
@@ -0,0 +1,32 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/**
+ * An Evaluator that scores a position by the difference between the
+ * numbers of legal moves available to white and to black.
+ *
+ * @author Amol Pant
+ */
+final class MobilityEvaluator implements Evaluator {
+
+    /**
+     * My name.
+     */
+    static final String NAME = "mobility";
+
+    @Override
+    public int evaluate(Board board) {
+        return board.countLegalMoves(WHITE) - board.countLegalMoves(BLACK);
+    }
+
+    @Override
+    public Evaluator create() {
+        return new MobilityEvaluator();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+}
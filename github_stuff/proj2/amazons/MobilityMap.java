@@ -0,0 +1,261 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/**
+ * Per-square reachability and per-amazon mobility for a Board, kept up to
+ * date incrementally as moves are made and undone.  A Board maintains one
+ * of these only on request (see Board.trackMobility).  A move changes the
+ * occupancy of just three squares, and occupying or vacating a square
+ * only affects the rays through it, so each update rescans just those
+ * rays instead of the whole board.
+ *
+ * @author Amol Pant
+ */
+final class MobilityMap {
+
+    /**
+     * A map describing the current position of BOARD.
+     */
+    MobilityMap(Board board) {
+        rebuild(board);
+    }
+
+    /**
+     * A copy of MODEL.
+     */
+    MobilityMap(MobilityMap model) {
+        _contents = model._contents.clone();
+        _reach = model._reach.clone();
+        _liberties = model._liberties.clone();
+        _hits = new int[][] {
+            model._hits[0].clone(), model._hits[1].clone()
+        };
+        _mobility = model._mobility.clone();
+    }
+
+    /**
+     * Recompute everything from scratch from the position on BOARD.
+     */
+    void rebuild(Board board) {
+        int n = Board.size() * Board.size();
+        _contents = new Piece[n];
+        _reach = new int[n];
+        _liberties = new int[n];
+        _hits = new int[2][n];
+        _mobility = new int[2];
+        for (int i = 0; i < n; i += 1) {
+            _contents[i] = board.get(i);
+        }
+        for (int i = 0; i < n; i += 1) {
+            Square s = Square.sq(i);
+            for (int dir = 0; dir < 8; dir += 1) {
+                int[] ray = s.ray(dir);
+                if (ray.length > 0 && _contents[ray[0]] == EMPTY) {
+                    _liberties[i] += 1;
+                }
+                _reach[i] += run(ray);
+            }
+            if (isAmazon(_contents[i])) {
+                addAmazon(i);
+            }
+        }
+    }
+
+    /**
+     * Return the number of squares reachable by a queen move from the
+     * square with index SQ (whatever SQ contains).
+     */
+    int reach(int sq) {
+        return _reach[sq];
+    }
+
+    /**
+     * Return the number of empty squares adjacent to the square with
+     * index SQ.
+     */
+    int liberties(int sq) {
+        return _liberties[sq];
+    }
+
+    /**
+     * Return the number of SIDE's amazons that can reach the square with
+     * index SQ with a queen move.
+     */
+    int hits(Piece side, int sq) {
+        return _hits[side(side)][sq];
+    }
+
+    /**
+     * Return the total number of queen moves available to SIDE's amazons
+     * (not counting spear throws).
+     */
+    int mobility(Piece side) {
+        return _mobility[side(side)];
+    }
+
+    /**
+     * Return true iff the square with index SQ holds an amazon that
+     * cannot move.
+     */
+    boolean isTrapped(int sq) {
+        return isAmazon(_contents[sq]) && _liberties[sq] == 0;
+    }
+
+    /**
+     * Update to reflect the move whose packed form is MOVE, which has
+     * not yet been made.
+     */
+    void makeMove(int move) {
+        int from = Move.from(move), to = Move.to(move),
+            spear = Move.spear(move);
+        Piece side = _contents[from];
+        removeAmazon(from);
+        setContents(from, EMPTY);
+        setContents(to, side);
+        addAmazon(to);
+        setContents(spear, SPEAR);
+    }
+
+    /**
+     * Update to reflect undoing the move whose packed form is MOVE, which
+     * was the last move made.
+     */
+    void undo(int move) {
+        int from = Move.from(move), to = Move.to(move),
+            spear = Move.spear(move);
+        Piece side = _contents[to];
+        setContents(spear, EMPTY);
+        removeAmazon(to);
+        setContents(to, EMPTY);
+        setContents(from, side);
+        addAmazon(from);
+    }
+
+    /**
+     * Set the square with index X to P, where exactly one of P and the
+     * current contents of X is EMPTY, updating the reach counts and
+     * liberties of the squares whose rays pass through X, and the hits of
+     * the amazons that see X.  Does not count P itself as an amazon (see
+     * addAmazon).
+     */
+    private void setContents(int x, Piece p) {
+        int sign = p == EMPTY ? 1 : -1;
+        Square sq = Square.sq(x);
+        for (int dir = 0; dir < 8; dir += 1) {
+            _runs[dir] = run(sq.ray(dir));
+        }
+        _contents[x] = p;
+        for (int dir = 0; dir < 8; dir += 1) {
+            int back = (dir + 4) % 8;
+            int[] ray = sq.ray(dir);
+            int delta = sign * (1 + _runs[back]);
+            if (ray.length > 0) {
+                _liberties[ray[0]] += sign;
+            }
+            for (int k = 0; k < ray.length; k += 1) {
+                int j = ray[k];
+                _reach[j] += delta;
+                if (_contents[j] != EMPTY) {
+                    if (isAmazon(_contents[j])) {
+                        _mobility[side(_contents[j])] += delta;
+                        int[] hits = _hits[side(_contents[j])];
+                        hits[x] += sign;
+                        int[] beyond = sq.ray(back);
+                        for (int m = 0; m < _runs[back]; m += 1) {
+                            hits[beyond[m]] += sign;
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the hits and reach of the amazon on the square with index SQ.
+     */
+    private void addAmazon(int sq) {
+        _mobility[side(_contents[sq])] += _reach[sq];
+        updateHits(sq, 1);
+    }
+
+    /**
+     * Remove the hits and reach of the amazon on the square with index
+     * SQ.
+     */
+    private void removeAmazon(int sq) {
+        _mobility[side(_contents[sq])] -= _reach[sq];
+        updateHits(sq, -1);
+    }
+
+    /**
+     * Add SIGN to the hits of the side of the amazon on square SQ for
+     * every square it can reach.
+     */
+    private void updateHits(int sq, int sign) {
+        int[] hits = _hits[side(_contents[sq])];
+        Square s = Square.sq(sq);
+        for (int dir = 0; dir < 8; dir += 1) {
+            for (int j : s.ray(dir)) {
+                if (_contents[j] != EMPTY) {
+                    break;
+                }
+                hits[j] += sign;
+            }
+        }
+    }
+
+    /**
+     * Return the number of empty squares at the start of RAY.
+     */
+    private int run(int[] ray) {
+        int n;
+        for (n = 0; n < ray.length && _contents[ray[n]] == EMPTY; n += 1) {
+            continue;
+        }
+        return n;
+    }
+
+    /**
+     * Return true iff P is WHITE or BLACK.
+     */
+    private static boolean isAmazon(Piece p) {
+        return p == WHITE || p == BLACK;
+    }
+
+    /**
+     * Return the index into _hits for SIDE.
+     */
+    private static int side(Piece side) {
+        return side == WHITE ? 0 : 1;
+    }
+
+    /**
+     * My copy of the board contents, by square index.
+     */
+    private Piece[] _contents;
+    /**
+     * _reach[i] is the number of squares reachable from square i.
+     */
+    private int[] _reach;
+    /**
+     * _liberties[i] is the number of empty neighbours of square i.
+     */
+    private int[] _liberties;
+    /**
+     * _hits[s][i] is the number of amazons of side s (see side) that can
+     * reach square i.
+     */
+    private int[][] _hits;
+    /**
+     * _mobility[s] is the total reach of the amazons of side s (see
+     * side).
+     */
+    private int[] _mobility;
+    /**
+     * Scratch space for setContents: the empty runs from the square being
+     * changed in each direction.
+     */
+    private final int[] _runs = new int[8];
+}
@@ -1,15 +1,20 @@
 package amazons;
 
+import java.util.Arrays;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 import static amazons.Square.sq;
 import static amazons.Square.SQ;
 
-/** A move in the game of Amazons. As for Squares, Moves are immutable
- *  and unique: there is only one move object for each possible move
- *  (generated by the factory method  mv, the constructor being private).
- *  As for Squares, you can freely use == to compare Moves.
+/** A move in the game of Amazons.  The board and the AI represent moves
+ *  as plain ints, packing the from, to, and spear square indices into
+ *  one value (see pack); a Move is an immutable object wrapping such a
+ *  value, for use where an object is more convenient, as in reporting
+ *  moves.  Moves are generated by the factory method mv (the constructor
+ *  being private), which keeps a small, bounded cache of recently used
+ *  Moves, so that Moves are not unique: use equals, not ==, to compare
+ *  them.  The printed form of a Move is computed only when requested.
  *  @author P. N. Hilfinger
  */
 final class Move {
@@ -24,35 +29,82 @@ final class Move {
 
     /** Return the square moved from. */
     Square from() {
-        return _from;
+        return sq(from(_packed));
     }
 
     /** Return the square moved to. */
     Square to() {
-        return _to;
+        return sq(to(_packed));
     }
 
     /** Return the destination of the spear. */
     Square spear() {
-        return _spear;
+        return sq(spear(_packed));
     }
 
-    /** Return the unique Move FROM-TO(SPEAR). */
+    /** Return the Move FROM-TO(SPEAR). */
     static Move mv(Square from, Square to, Square spear) {
-        if (MOVES[from.index()][to.index()][spear.index()] == null) {
-            MOVES[from.index()][to.index()][spear.index()] =
-                new Move(from, to, spear);
+        return mv(pack(from.index(), to.index(), spear.index()));
+    }
+
+    /** Return the Move whose packed encoding (see pack) is PACKED. */
+    static Move mv(int packed) {
+        int h = (packed * CACHE_HASH) >>> (Integer.SIZE - CACHE_BITS);
+        Move move = _cache[h];
+        if (move == null || move._packed != packed) {
+            move = new Move(packed);
+            _cache[h] = move;
         }
-        return MOVES[from.index()][to.index()][spear.index()];
+        return move;
+    }
+
+    /** Return the packed encoding of the move whose from, to, and spear
+     *  squares have indices FROM, TO, and SPEAR.  Packed moves are plain
+     *  ints, so that move lists can be kept in int arrays. */
+    static int pack(int from, int to, int spear) {
+        return from | (to << SQ_BITS) | (spear << (2 * SQ_BITS));
+    }
+
+    /** Return the index of the square moved from in packed move PACKED. */
+    static int from(int packed) {
+        return packed & SQ_MASK;
+    }
+
+    /** Return the index of the square moved to in packed move PACKED. */
+    static int to(int packed) {
+        return (packed >>> SQ_BITS) & SQ_MASK;
+    }
+
+    /** Return the index of the spear square in packed move PACKED. */
+    static int spear(int packed) {
+        return (packed >>> (2 * SQ_BITS)) & SQ_MASK;
+    }
+
+    /** Return my packed encoding. */
+    int pack() {
+        return _packed;
+    }
+
+    /** Return the printed form (FROM-TO(SPEAR)) of the packed move
+     *  PACKED. */
+    static String toString(int packed) {
+        return sq(from(packed)) + "-" + sq(to(packed))
+            + "(" + sq(spear(packed)) + ")";
     }
 
     /** Return the Move denoted by STR, if STR denotes a move with
-     *  valid syntax in which the piece move and spear throw are proper
-     *  queen moves, and null otherwise. */
+     *  valid syntax whose squares are all on the board and in which the
+     *  piece move and spear throw are proper queen moves, and null
+     *  otherwise. */
     static Move mv(String str) {
         _moveMatcher.reset(str);
         if (_moveMatcher.matches()) {
             int k = _moveMatcher.group(1) != null ? 1 : 4;
+            for (int i = k; i < k + 3; i += 1) {
+                if (!onBoard(_moveMatcher.group(i))) {
+                    return null;
+                }
+            }
             Square from = sq(_moveMatcher.group(k)),
                 to = sq(_moveMatcher.group(k + 1)),
                 spear = sq(_moveMatcher.group(k + 2));
@@ -63,6 +115,13 @@ final class Move {
         return null;
     }
 
+    /** Return true iff POSN, which has the syntax of Square.SQ, denotes
+     *  a square on boards of the current size. */
+    private static boolean onBoard(String posn) {
+        return Square.exists(posn.charAt(0) - 'a',
+                             Integer.parseInt(posn.substring(1)) - 1);
+    }
+
     /** Return true iff STR has the right format for a Move, ignoring whether
      *  its piece-move and spear-throw are valid queen moves. */
     static boolean isGrammaticalMove(String str) {
@@ -70,23 +129,51 @@ final class Move {
         return _moveMatcher.matches();
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Move && ((Move) obj)._packed == _packed;
+    }
+
+    @Override
+    public int hashCode() {
+        return _packed;
+    }
+
     @Override
     public String toString() {
+        if (_str == null) {
+            _str = toString(_packed);
+        }
         return _str;
     }
 
-    /** Construct the Move FROM-TO(SPEAR). */
-    private Move(Square from, Square to, Square spear) {
-        _from = from; _to = to; _spear = spear;
-        _str = String.format("%s-%s(%s)", from, to, spear);
+    /** Construct the Move whose packed encoding is PACKED. */
+    private Move(int packed) {
+        _packed = packed;
+    }
+
+    /** The number of bits used for each square index in a packed move. */
+    private static final int SQ_BITS = 8;
+    /** Mask for one square index in a packed move. */
+    private static final int SQ_MASK = (1 << SQ_BITS) - 1;
+
+    /** Discard cached Moves, whose squares refer to boards of a different
+     *  size.  Called by Board.setSize with the new SIZE. */
+    static void setSize(int size) {
+        Arrays.fill(_cache, null);
     }
 
-    /** The cache of all Moves created. */
-    private static final Move[][][] MOVES = new Move[100][100][100];
+    /** Log2 of the number of entries in _cache. */
+    private static final int CACHE_BITS = 12;
+    /** Multiplier used to hash packed moves into _cache. */
+    private static final int CACHE_HASH = 0x9E3779B1;
+    /** A direct-mapped cache of recently created Moves, indexed by a hash
+     *  of their packed encodings. */
+    private static final Move[] _cache = new Move[1 << CACHE_BITS];
 
-    /** The components of a Move. */
-    private final Square _from, _to, _spear;
-    /** The printed form of a Move. */
+    /** My packed encoding. */
+    private final int _packed;
+    /** My printed form, or null if it has not yet been needed. */
     private String _str;
     /**  A utility Matcher for moves, using MOVE_PATTERN. */
     private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
@@ -0,0 +1,222 @@
+package amazons;
+
+import java.util.Arrays;
+
+/**
+ * Heuristics for the order in which a search tries moves: the hash move
+ * (the best move recorded for a position by a previous search), then the
+ * killer moves (moves that recently caused cutoffs at the same ply),
+ * then the others by their history scores (how often and how deep they
+ * have caused cutoffs anywhere in the tree).  History is kept separately
+ * for the queen-move part (from-to) and the spear part (to-spear) of a
+ * move, since a good spear throw from a square tends to be good whatever
+ * amazon arrives there.
+ *
+ * For searches that take each move in two stages (see SearchOptions),
+ * scoreQueenMoves orders the queen moves by the same heuristics before
+ * any spear throws are generated.
+ *
+ * Moves are not sorted.  Instead, score assigns each move a priority, and
+ * select picks out the best remaining move each time the search needs one.
+ * Only the first SELECTED moves are picked this way; since a cutoff, if
+ * there is one, usually comes early, the rest are simply taken in the
+ * order they were generated.
+ *
+ * @author Amol Pant
+ */
+final class MoveOrdering {
+
+    /**
+     * The number of moves at each node that are picked by priority.
+     */
+    static final int SELECTED = 32;
+
+    /**
+     * Prepare for a new search from a position in which at most
+     * MAXPLY moves remain, forgetting killer moves and giving less weight
+     * to the history gathered by earlier searches.
+     */
+    void newSearch(int maxPly) {
+        resetKillers(maxPly);
+        for (int i = 0; i < HISTORY_SIZE; i += 1) {
+            _queenHistory[i] >>= 1;
+            _spearHistory[i] >>= 1;
+        }
+    }
+
+    /**
+     * Forget all killer moves, and make room for those of searches in
+     * which at most MAXPLY moves remain.
+     */
+    void resetKillers(int maxPly) {
+        if (_killers.length < KILLERS * (maxPly + 1)) {
+            _killers = new int[KILLERS * (maxPly + 1)];
+        }
+        Arrays.fill(_killers, NO_MOVE);
+    }
+
+    /**
+     * Forget all history scores.
+     */
+    void clearHistory() {
+        Arrays.fill(_queenHistory, 0);
+        Arrays.fill(_spearHistory, 0);
+    }
+
+    /**
+     * Set SCORES[k] to the priority of MOVES[k], for 0 <= k < N, where
+     * the moves are to be searched at ply PLY from the root and HASHMOVE
+     * is the hash move for the position (or NO_MOVE).
+     */
+    void score(int[] moves, int[] scores, int n, int hashMove, int ply) {
+        int killer0 = _killers[KILLERS * ply],
+            killer1 = _killers[KILLERS * ply + 1];
+        for (int k = 0; k < n; k += 1) {
+            int move = moves[k];
+            if (move == hashMove) {
+                scores[k] = HASH_PRIORITY;
+            } else if (move == killer0) {
+                scores[k] = KILLER_PRIORITY;
+            } else if (move == killer1) {
+                scores[k] = KILLER_PRIORITY - 1;
+            } else {
+                scores[k] = _queenHistory[queenIndex(move)]
+                    + _spearHistory[spearIndex(move)];
+            }
+        }
+    }
+
+    /**
+     * Set SCORES[k] to the priority of the queen move QUEENS[k] (packed
+     * with spear square 0, as by Board.generateQueenMoves), for 0 <= k <
+     * N, where the moves are to be searched at ply PLY from the root and
+     * HASHMOVE is the hash move for the position (or NO_MOVE).  Queen
+     * moves are prioritized by the hash and killer moves they begin and
+     * by their own history scores.
+     */
+    void scoreQueenMoves(int[] queens, int[] scores, int n, int hashMove,
+                         int ply) {
+        int hash = queenPart(hashMove);
+        int killer0 = queenPart(_killers[KILLERS * ply]),
+            killer1 = queenPart(_killers[KILLERS * ply + 1]);
+        for (int k = 0; k < n; k += 1) {
+            int queen = queens[k];
+            if (queen == hash) {
+                scores[k] = HASH_PRIORITY;
+            } else if (queen == killer0) {
+                scores[k] = KILLER_PRIORITY;
+            } else if (queen == killer1) {
+                scores[k] = KILLER_PRIORITY - 1;
+            } else {
+                scores[k] = _queenHistory[queen];
+            }
+        }
+    }
+
+    /**
+     * Return the Kth move to search among the first N entries of MOVES,
+     * whose priorities are in SCORES, assuming that moves 0 to K-1 have
+     * already been returned by this method.  If K < SELECTED, first moves
+     * the move with highest priority among MOVES[K..N-1] to position K
+     * (along with its priority).
+     */
+    static int select(int[] moves, int[] scores, int k, int n) {
+        if (k < SELECTED) {
+            int best = k;
+            for (int j = k + 1; j < n; j += 1) {
+                if (scores[j] > scores[best]) {
+                    best = j;
+                }
+            }
+            if (best != k) {
+                int move = moves[best], score = scores[best];
+                moves[best] = moves[k];
+                scores[best] = scores[k];
+                moves[k] = move;
+                scores[k] = score;
+            }
+        }
+        return moves[k];
+    }
+
+    /**
+     * Record that MOVE caused a cutoff in a search of DEPTH at ply PLY
+     * from the root.
+     */
+    void cutoff(int move, int ply, int depth) {
+        int i = KILLERS * ply;
+        if (_killers[i] != move) {
+            _killers[i + 1] = _killers[i];
+            _killers[i] = move;
+        }
+        int bonus = depth * depth;
+        int q = queenIndex(move), s = spearIndex(move);
+        _queenHistory[q] = Math.min(_queenHistory[q] + bonus, MAX_HISTORY);
+        _spearHistory[s] = Math.min(_spearHistory[s] + bonus, MAX_HISTORY);
+    }
+
+    /**
+     * Return the index in _queenHistory of the from-to part of the packed
+     * move MOVE.
+     */
+    private static int queenIndex(int move) {
+        return Move.pack(Move.from(move), Move.to(move), 0);
+    }
+
+    /**
+     * Return the queen-move part of MOVE (see queenIndex), or NO_MOVE if
+     * MOVE is NO_MOVE.
+     */
+    private static int queenPart(int move) {
+        return move == NO_MOVE ? NO_MOVE : queenIndex(move);
+    }
+
+    /**
+     * Return the index in _spearHistory of the to-spear part of the packed
+     * move MOVE.
+     */
+    private static int spearIndex(int move) {
+        return Move.pack(Move.to(move), Move.spear(move), 0);
+    }
+
+    /**
+     * A move value denoting no move.
+     */
+    private static final int NO_MOVE = TranspositionTable.NO_MOVE;
+    /**
+     * The number of killer moves kept for each ply.
+     */
+    private static final int KILLERS = 2;
+    /**
+     * The priority of the hash move.
+     */
+    private static final int HASH_PRIORITY = Integer.MAX_VALUE;
+    /**
+     * The priority of the first killer move (the second gets one less).
+     */
+    private static final int KILLER_PRIORITY = Integer.MAX_VALUE - 1;
+    /**
+     * The largest history score for either part of a move, small enough
+     * that the sum of two is below KILLER_PRIORITY - 1.
+     */
+    private static final int MAX_HISTORY = 1 << 29;
+    /**
+     * The number of entries in each history table: one for each pair of
+     * square indices.
+     */
+    private static final int HISTORY_SIZE =
+        Move.pack(0, Board.MAX_SIZE * Board.MAX_SIZE, 0);
+
+    /**
+     * _killers[KILLERS * p + i] is the ith killer move at ply p.
+     */
+    private int[] _killers = new int[0];
+    /**
+     * History scores of queen moves, indexed by queenIndex.
+     */
+    private final int[] _queenHistory = new int[HISTORY_SIZE];
+    /**
+     * History scores of spear throws, indexed by spearIndex.
+     */
+    private final int[] _spearHistory = new int[HISTORY_SIZE];
+}
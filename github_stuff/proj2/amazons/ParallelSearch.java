@@ -0,0 +1,471 @@
+package amazons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static amazons.Searcher.INFTY;
+import static amazons.Searcher.NO_MOVE;
+
+/**
+ * A parallel alpha-beta search to a fixed depth, whose result does not
+ * depend on how its work is scheduled.  At each node far enough from the
+ * leaves, the first move is searched alone, after which the remaining
+ * moves are searched at once as ForkJoin tasks (the "Young Brothers Wait"
+ * scheme), sharing the best value found so far through an atomic bound.
+ * Nodes near the leaves are searched serially by Searchers, one per
+ * worker thread.  All share one TranspositionTable.  Each worker thread
+ * also keeps the move buffers and Boards its tasks need (see Worker), so
+ * that the search allocates little beyond the tasks themselves.
+ *
+ * Every value computed is a correct alpha-beta value for its window, and
+ * at the root each move after the first is searched with a window just
+ * wide enough to tell whether it ties the best value so far.  The search
+ * can thus find the first move, in the order Board.generateMoves produces
+ * them, with the best minimax value, which is the move chosen by
+ * Searcher.fixedDepthMove.
+ *
+ * @author Amol Pant
+ */
+final class ParallelSearch {
+
+    /**
+     * A search using THREADS threads, recording results in TABLE, and
+     * valuing positions with Evaluators made from the template EVALUATOR
+     * (one per thread).
+     */
+    ParallelSearch(TranspositionTable table, int threads,
+                   Evaluator evaluator) {
+        this(table, threads, evaluator, 0, new SearchOptions());
+    }
+
+    /**
+     * A search as for ParallelSearch(TABLE, THREADS, EVALUATOR) in which
+     * each thread also caches its evaluations in an EvalCache with
+     * 2**CACHEBITS entries, or in none if CACHEBITS is 0, and searches as
+     * OPTIONS direct.
+     */
+    ParallelSearch(TranspositionTable table, int threads,
+                   Evaluator evaluator, int cacheBits,
+                   SearchOptions options) {
+        _table = table;
+        _pool = new ForkJoinPool(threads);
+        AtomicBoolean stop = new AtomicBoolean();
+        _worker = ThreadLocal.withInitial(() -> {
+            Worker worker =
+                new Worker(new Searcher(table, stop, evaluator.create(),
+                                        cacheBits == 0 ? null
+                                        : new EvalCache(cacheBits),
+                                        options));
+            _workers.add(worker);
+            return worker;
+        });
+    }
+
+    /**
+     * Return the number of threads I use.
+     */
+    int threads() {
+        return _pool.getParallelism();
+    }
+
+    /**
+     * Return the move (in packed form) that a search of BOARD to DEPTH
+     * finds for the side whose SENSE is given (as for Searcher), or
+     * NO_MOVE if there are no moves.  Like Searcher.fixedDepthMove, the
+     * search is never selective, whatever my options; provided that the
+     * table holds no results of searches deeper than DEPTH, the result is
+     * the same as that of Searcher.fixedDepthMove.  Searches to each
+     * depth up to DEPTH in turn, so that the table can supply good first
+     * moves to try at each node.  Leaves BOARD as it found it.
+     */
+    int findMove(Board board, int sense, int depth) {
+        _workers.removeIf(worker -> !worker._thread.isAlive());
+        for (Worker worker : _workers) {
+            worker.reset();
+        }
+        int move = NO_MOVE;
+        for (int d = 1; d <= depth; d += 1) {
+            move = _pool.invoke(new Root(board, sense, d));
+        }
+        return move;
+    }
+
+    /**
+     * Return the EvalCaches of my threads.
+     */
+    Iterable<EvalCache> evalCaches() {
+        List<EvalCache> caches = new ArrayList<>();
+        for (Worker worker : _workers) {
+            if (worker._searcher.evalCache() != null) {
+                caches.add(worker._searcher.evalCache());
+            }
+        }
+        return caches;
+    }
+
+    /**
+     * Stop my threads.
+     */
+    void shutdown() {
+        _pool.shutdown();
+    }
+
+    /**
+     * Return the value of BOARD, on which the side whose SENSE is given
+     * is to move, searched to DEPTH, where only values strictly between
+     * ALPHA and BETA are of interest.  The result is as for
+     * Searcher.search.  Leaves BOARD as it found it.
+     */
+    private int value(Board board, int sense, int depth,
+                      int alpha, int beta) {
+        Worker worker = _worker.get();
+        if (depth <= SERIAL_DEPTH || board.winner() != null) {
+            return worker._searcher.search(board, sense, depth, alpha, beta);
+        }
+        long key = board.key();
+        long entry = _table.probe(key);
+        int[] moves = worker.pushMoves(board.maxMoves());
+        int n = board.generateMoves(board.turn(), moves);
+        if (entry != 0) {
+            promote(moves, n, TranspositionTable.move(entry));
+        }
+        int alpha0 = alpha, beta0 = beta;
+        board.makeMove(moves[0]);
+        int best = value(board, -sense, depth - 1, alpha, beta);
+        board.undo();
+        int bestMove = moves[0];
+        if (sense == 1) {
+            alpha = Math.max(alpha, best);
+        } else {
+            beta = Math.min(beta, best);
+        }
+        List<Node> siblings = new ArrayList<>(n - 1);
+        if (beta > alpha) {
+            AtomicInteger bound = new AtomicInteger(sense == 1 ? alpha : beta);
+            for (int k = 1; k < n; k += 1) {
+                siblings.add(new Node(board, moves[k], depth - 1,
+                                      alpha, beta, bound, false));
+            }
+        }
+        worker.popMoves();
+        ForkJoinTask.invokeAll(siblings);
+        for (Node sibling : siblings) {
+            int v = sibling.join();
+            if (sense == 1 ? v > best : v < best) {
+                best = v;
+                bestMove = sibling._move;
+            }
+        }
+        int type = best <= alpha0 ? TranspositionTable.UPPER
+            : best >= beta0 ? TranspositionTable.LOWER
+            : TranspositionTable.EXACT;
+        _table.store(key, depth, type, best, bestMove);
+        return best;
+    }
+
+    /**
+     * Move MOVE, if it is among the first N entries of MOVES, to the
+     * front of MOVES, keeping the others in order.
+     */
+    private static void promote(int[] moves, int n, int move) {
+        for (int k = 0; k < n; k += 1) {
+            if (moves[k] == move) {
+                System.arraycopy(moves, 0, moves, 1, k);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    /**
+     * The task of choosing the move at the root of a search.
+     */
+    @SuppressWarnings("serial")
+    private final class Root extends RecursiveTask<Integer> {
+
+        /**
+         * A task searching BOARD to DEPTH for the side whose SENSE is
+         * given.
+         */
+        Root(Board board, int sense, int depth) {
+            _board = board;
+            _sense = sense;
+            _depth = depth;
+        }
+
+        @Override
+        protected Integer compute() {
+            Worker worker = _worker.get();
+            int[] moves = worker.pushMoves(_board.maxMoves());
+            int n = _board.generateMoves(_board.turn(), moves);
+            if (n == 0) {
+                worker.popMoves();
+                return NO_MOVE;
+            }
+            _board.makeMove(moves[0]);
+            int first = value(_board, -_sense, _depth - 1, -INFTY, INFTY);
+            _board.undo();
+            AtomicInteger bound = new AtomicInteger(first);
+            List<Node> siblings = new ArrayList<>(n - 1);
+            for (int k = 1; k < n; k += 1) {
+                siblings.add(new Node(_board, moves[k], _depth - 1,
+                                      -INFTY, INFTY, bound, true));
+            }
+            worker.popMoves();
+            invokeAll(siblings);
+            int best = first, bestMove = moves[0];
+            for (Node sibling : siblings) {
+                int v = sibling.join();
+                if (_sense == 1 ? v > best : v < best) {
+                    best = v;
+                    bestMove = sibling._move;
+                }
+            }
+            return bestMove;
+        }
+
+        /**
+         * The position searched.
+         */
+        private final Board _board;
+        /**
+         * The sense (as for Searcher) of the side to move on _board.
+         */
+        private final int _sense;
+        /**
+         * The depth of the search.
+         */
+        private final int _depth;
+    }
+
+    /**
+     * The task of searching one move at a node after its first move has
+     * been searched.
+     */
+    @SuppressWarnings("serial")
+    private final class Node extends RecursiveTask<Integer> {
+
+        /**
+         * A task searching the position after MOVE on PARENT to DEPTH,
+         * where the parent node was searched with window ALPHA, BETA and
+         * BOUND holds the best value found among the moves at the parent
+         * so far.  When TIES, the window is widened so that a value equal
+         * to BOUND is found exactly.  PARENT must not change until the
+         * task completes.
+         */
+        Node(Board parent, int move, int depth, int alpha, int beta,
+             AtomicInteger bound, boolean ties) {
+            _parent = parent;
+            _move = move;
+            _depth = depth;
+            _alpha = alpha;
+            _beta = beta;
+            _bound = bound;
+            _ties = ties;
+        }
+
+        @Override
+        protected Integer compute() {
+            int parentSense = _parent.turn() == Piece.WHITE ? 1 : -1;
+            int alpha = _alpha, beta = _beta;
+            int b = _bound.get();
+            if (parentSense == 1) {
+                alpha = Math.max(alpha, _ties ? b - 1 : b);
+            } else {
+                beta = Math.min(beta, _ties ? b + 1 : b);
+            }
+            if (beta <= alpha) {
+                return parentSense == 1 ? -INFTY : INFTY;
+            }
+            Worker worker = _worker.get();
+            Board board = worker.pushBoard(_parent);
+            board.makeMove(_move);
+            int v = value(board, -parentSense, _depth, alpha, beta);
+            worker.popBoard();
+            if (parentSense == 1 && v > alpha) {
+                _bound.accumulateAndGet(v, Math::max);
+            } else if (parentSense == -1 && v < beta) {
+                _bound.accumulateAndGet(v, Math::min);
+            }
+            return v;
+        }
+
+        /**
+         * The position at the parent node.
+         */
+        private final Board _parent;
+        /**
+         * The move from _parent that I search.
+         */
+        private final int _move;
+        /**
+         * The depth to which I search the position after _move.
+         */
+        private final int _depth;
+        /**
+         * The window with which the parent node was searched.
+         */
+        private final int _alpha, _beta;
+        /**
+         * The best value found so far among the moves at the parent.
+         */
+        private final AtomicInteger _bound;
+        /**
+         * True iff ties with _bound must be found exactly.
+         */
+        private final boolean _ties;
+    }
+
+    /**
+     * The state kept by one worker thread for the tasks it runs.  While
+     * a task waits for its subtasks, its thread may run other tasks, but
+     * these finish before it resumes.  The move buffers and Boards in
+     * use on a thread thus form stacks, and are reused by later tasks
+     * once popped.
+     */
+    private static final class Worker {
+
+        /**
+         * A Worker for the current thread whose nodes near the leaves are
+         * searched by SEARCHER.
+         */
+        Worker(Searcher searcher) {
+            _thread = Thread.currentThread();
+            _searcher = searcher;
+        }
+
+        /**
+         * Prepare for a new search, whose positions need not follow from
+         * those of the last.  There must be no tasks running.
+         */
+        void reset() {
+            _movesUsed = _boardsUsed = _boardsValid = 0;
+        }
+
+        /**
+         * Return a move buffer with room for at least SIZE moves, reserved
+         * until the matching call to popMoves.
+         */
+        int[] pushMoves(int size) {
+            if (_movesUsed == _moves.length) {
+                _moves = Arrays.copyOf(_moves, 2 * _movesUsed + 1);
+            }
+            if (_moves[_movesUsed] == null
+                || _moves[_movesUsed].length < size) {
+                _moves[_movesUsed] = new int[size];
+            }
+            _movesUsed += 1;
+            return _moves[_movesUsed - 1];
+        }
+
+        /**
+         * Release the move buffer returned by the last call to pushMoves.
+         */
+        void popMoves() {
+            _movesUsed -= 1;
+        }
+
+        /**
+         * Return a Board in the position of TARGET, reserved until the
+         * matching call to popBoard.  TARGET must not change until then.
+         * A Board already used in the current search reaches the position
+         * by undoing and making moves, since its history and TARGET's
+         * both start from the position at the root; others are copied.
+         */
+        Board pushBoard(Board target) {
+            if (_boardsUsed == _boards.length) {
+                _boards = Arrays.copyOf(_boards, 2 * _boardsUsed + 1);
+            }
+            Board board = _boards[_boardsUsed];
+            if (board == null) {
+                board = _boards[_boardsUsed] = new Board(target);
+            } else if (_boardsUsed >= _boardsValid) {
+                board.copy(target);
+            } else {
+                int common = 0,
+                    n = Math.min(board.numMoves(), target.numMoves());
+                while (common < n
+                       && board.move(common) == target.move(common)) {
+                    common += 1;
+                }
+                while (board.numMoves() > common) {
+                    board.undo();
+                }
+                for (int k = common; k < target.numMoves(); k += 1) {
+                    board.makeMove(target.move(k));
+                }
+            }
+            _boardsUsed += 1;
+            _boardsValid = Math.max(_boardsValid, _boardsUsed);
+            return board;
+        }
+
+        /**
+         * Release the Board returned by the last call to pushBoard.
+         */
+        void popBoard() {
+            _boardsUsed -= 1;
+        }
+
+        /**
+         * The thread I belong to.
+         */
+        private final Thread _thread;
+        /**
+         * My thread's Searcher, for the nodes near the leaves.
+         */
+        private final Searcher _searcher;
+        /**
+         * My move buffers, of which the first _movesUsed are in use.
+         */
+        private int[][] _moves = new int[0][];
+        /**
+         * The number of my move buffers in use.
+         */
+        private int _movesUsed;
+        /**
+         * My Boards, of which the first _boardsUsed are in use, and the
+         * first _boardsValid have been used in the current search.
+         */
+        private Board[] _boards = new Board[0];
+        /**
+         * The numbers of my Boards in use and used in the current search.
+         */
+        private int _boardsUsed, _boardsValid;
+    }
+
+    /**
+     * Nodes with at most this depth left are searched serially.
+     */
+    private static final int SERIAL_DEPTH = 1;
+
+    /**
+     * Results of searches, shared by all threads.
+     */
+    private final TranspositionTable _table;
+
+    /**
+     * The threads that do the searching.
+     */
+    private final ForkJoinPool _pool;
+
+    /**
+     * The Worker for each thread.
+     */
+    private final ThreadLocal<Worker> _worker;
+
+    /**
+     * The Workers of my threads.  The pool replaces threads that have
+     * been idle for a while, so those of threads that have ended are
+     * dropped at the start of each search.
+     */
+    private final Queue<Worker> _workers = new ConcurrentLinkedQueue<>();
+}
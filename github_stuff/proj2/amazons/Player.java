@@ -34,6 +34,12 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Return a description of the hits and misses of my caches of
+     *  position values, or null if I keep none. */
+    String evalCacheStats() {
+        return null;
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
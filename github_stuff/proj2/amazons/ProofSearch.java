@@ -0,0 +1,300 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Utils.error;
+
+/**
+ * A depth-first proof-number (df-pn) search, which tries to prove that
+ * the side to move in a position has a forced win, or that it has none.
+ * Amazons has no draws and no repeated positions, so every position is
+ * one or the other, and the side that cannot move has lost.
+ *
+ * Each position n has a proof number phi(n), the least number of
+ * positions whose values must still be found to prove that the side to
+ * move wins, and a disproof number delta(n), the least number to prove
+ * that it loses.  For a position with moves to positions c1, c2, ...,
+ * phi(n) = min delta(ci) and delta(n) = sum phi(ci).  The search always
+ * expands the move with the least delta, under thresholds on phi and
+ * delta that let it descend without going back to the root after each
+ * expansion, and keeps the numbers of the positions it has examined in a
+ * fixed-size table indexed by Board.key.  Positions whose sides are
+ * separated are valued exactly by an EndgameSolver.
+ *
+ * A search examines at most a given number of positions, so its memory
+ * and time are both bounded, and it reports whether it settled the
+ * position.  The table is kept from search to search: its values hold
+ * for a position however it was reached, so work on one move helps with
+ * the next.
+ *
+ * @author Amol Pant
+ */
+final class ProofSearch {
+
+    /**
+     * Result of a search that did not settle the position.
+     */
+    static final int UNKNOWN = 0;
+    /**
+     * Result of a search proving that the side to move wins.
+     */
+    static final int WIN = 1;
+    /**
+     * Result of a search proving that the side to move loses.
+     */
+    static final int LOSS = 2;
+
+    /**
+     * The largest table size, in bits.
+     */
+    static final int MAX_BITS = 26;
+
+    /**
+     * A search whose table has 2**BITS entries.
+     */
+    ProofSearch(int bits) {
+        if (bits < 1 || bits > MAX_BITS) {
+            throw error("bad table size: %d", bits);
+        }
+        _keys = new long[1 << bits];
+        _phi = new int[1 << bits];
+        _delta = new int[1 << bits];
+        _bestMoves = new int[1 << bits];
+        _mask = (1 << bits) - 1;
+    }
+
+    /**
+     * Try to settle the position on BOARD, examining at most BUDGET
+     * positions, and return WIN, LOSS, or UNKNOWN accordingly.  Leaves
+     * BOARD as it found it.
+     */
+    int solve(Board board, int budget) {
+        _budget = budget;
+        _nodes = 0;
+        _maxMoves = board.maxMoves();
+        mid(board, INFINITY, INFINITY, 0);
+        long key = board.key();
+        int slot = slot(key);
+        if (!found(slot, key)) {
+            _bestMove = NO_MOVE;
+            return UNKNOWN;
+        } else if (_delta[slot] == 0) {
+            _bestMove = NO_MOVE;
+            return LOSS;
+        }
+        _bestMove = _bestMoves[slot];
+        return _phi[slot] == 0 ? WIN : UNKNOWN;
+    }
+
+    /**
+     * Return the move (in packed form) for the side to move found by the
+     * last call to solve: a winning move if it returned WIN, the move
+     * closest to a proof of a win if it returned UNKNOWN, and NO_MOVE if
+     * it returned LOSS.
+     */
+    int bestMove() {
+        return _bestMove;
+    }
+
+    /**
+     * Return true iff a search has proven that the move MOVE (in packed
+     * form) loses for the side to move on BOARD.
+     */
+    boolean provenLoss(Board board, int move) {
+        long key = board.keyAfter(move);
+        int slot = slot(key);
+        return found(slot, key) && _phi[slot] == 0;
+    }
+
+    /**
+     * Return the number of positions examined by the last call to solve.
+     */
+    int nodes() {
+        return _nodes;
+    }
+
+    /**
+     * Remove all entries from my table.
+     */
+    void clear() {
+        Arrays.fill(_phi, 0);
+        Arrays.fill(_delta, 0);
+    }
+
+    /**
+     * Return the number of entries in my table.
+     */
+    int size() {
+        return _keys.length;
+    }
+
+    /**
+     * Expand the position on BOARD, PLY moves from the root of the
+     * search, until its proof number reaches THPHI, its disproof number
+     * reaches THDELTA, or the budget runs out, and record its numbers in
+     * the table.  Leaves BOARD as it found it.
+     */
+    private void mid(Board board, int thPhi, int thDelta, int ply) {
+        long key = board.key();
+        int slot = slot(key);
+        if (found(slot, key)) {
+            if (_phi[slot] >= thPhi || _delta[slot] >= thDelta) {
+                return;
+            }
+        } else if (_endgame.solve(board)) {
+            Piece turn = board.turn();
+            if (_endgame.moves(turn) > _endgame.moves(turn.opponent())) {
+                store(key, 0, INFINITY, _endgame.bestMove());
+            } else {
+                store(key, INFINITY, 0, NO_MOVE);
+            }
+            return;
+        }
+        _nodes += 1;
+        if (ply == _moves.length) {
+            _moves = Arrays.copyOf(_moves, 2 * ply);
+            _childKeys = Arrays.copyOf(_childKeys, 2 * ply);
+        }
+        if (_moves[ply] == null || _moves[ply].length < _maxMoves) {
+            _moves[ply] = new int[_maxMoves];
+            _childKeys[ply] = new long[_maxMoves];
+        }
+        int[] moves = _moves[ply];
+        long[] keys = _childKeys[ply];
+        int n = board.generateMoves(board.turn(), moves);
+        for (int k = 0; k < n; k += 1) {
+            keys[k] = board.keyAfter(moves[k]);
+        }
+        while (true) {
+            int phi = INFINITY, delta = 0, delta2 = INFINITY;
+            int best = -1, bestPhi = 0;
+            for (int k = 0; k < n; k += 1) {
+                int s = slot(keys[k]);
+                boolean known = found(s, keys[k]);
+                int cPhi = known ? _phi[s] : 1,
+                    cDelta = known ? _delta[s] : 1;
+                delta = Math.min(INFINITY, delta + cPhi);
+                if (cDelta < phi) {
+                    delta2 = phi;
+                    phi = cDelta;
+                    best = k;
+                    bestPhi = cPhi;
+                } else if (cDelta < delta2) {
+                    delta2 = cDelta;
+                }
+            }
+            if (phi >= thPhi || delta >= thDelta || _nodes >= _budget) {
+                store(key, phi, delta, best < 0 ? NO_MOVE : moves[best]);
+                return;
+            }
+            board.makeMove(moves[best]);
+            mid(board, thDelta - delta + bestPhi,
+                Math.min(thPhi, delta2 + 1), ply + 1);
+            board.undo();
+        }
+    }
+
+    /**
+     * Return the slot in my table for the position with key KEY.
+     */
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & _mask;
+    }
+
+    /**
+     * Return true iff SLOT holds the numbers of the position with key
+     * KEY.  Empty slots have both numbers 0, which no position has.
+     */
+    private boolean found(int slot, long key) {
+        return _keys[slot] == key && (_phi[slot] | _delta[slot]) != 0;
+    }
+
+    /**
+     * Record PHI and DELTA as the numbers of the position with key KEY,
+     * and MOVE as its most promising move, replacing whatever was in its
+     * slot.
+     */
+    private void store(long key, int phi, int delta, int move) {
+        int slot = slot(key);
+        _keys[slot] = key;
+        _phi[slot] = phi;
+        _delta[slot] = delta;
+        _bestMoves[slot] = move;
+    }
+
+    /**
+     * A proof or disproof number denoting a proof that is impossible.
+     * Small enough that sums of two do not overflow.
+     */
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    /**
+     * A move value denoting no move.
+     */
+    private static final int NO_MOVE = TranspositionTable.NO_MOVE;
+
+    /**
+     * The largest number of states my EndgameSolver examines per
+     * position.
+     */
+    private static final int ENDGAME_BUDGET = 1 << 10;
+
+    /**
+     * Log2 of the number of states my EndgameSolver memoizes.
+     */
+    private static final int ENDGAME_TABLE_BITS = 12;
+
+    /**
+     * Values positions in which the sides are separated.
+     */
+    private final EndgameSolver _endgame =
+        new EndgameSolver(ENDGAME_BUDGET, ENDGAME_TABLE_BITS);
+
+    /**
+     * The keys of the positions in my table.
+     */
+    private final long[] _keys;
+    /**
+     * The proof and disproof numbers of the positions in my table.
+     */
+    private final int[] _phi, _delta;
+    /**
+     * The most promising moves (the winning moves, for proven wins) from
+     * the positions in my table, or NO_MOVE.
+     */
+    private final int[] _bestMoves;
+    /**
+     * Mask selecting a slot from a key.
+     */
+    private final int _mask;
+    /**
+     * The largest number of positions to examine in the current search.
+     */
+    private int _budget;
+    /**
+     * The number of positions examined so far in the current search.
+     */
+    private int _nodes;
+    /**
+     * The size of the move buffers needed in the current search.
+     */
+    private int _maxMoves;
+    /**
+     * The move found by the last search.
+     */
+    private int _bestMove = NO_MOVE;
+    /**
+     * _moves[p] holds the moves from the position p moves from the
+     * root, and _childKeys[p] the keys of the positions they lead to.
+     */
+    private int[][] _moves = new int[INITIAL_PLIES][];
+    /**
+     * See _moves.
+     */
+    private long[][] _childKeys = new long[INITIAL_PLIES][];
+
+    /**
+     * The initial number of plies for which there are buffers.
+     */
+    private static final int INITIAL_PLIES = 32;
+}
@@ -0,0 +1,351 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+
+/**
+ * The regions of a Board: the connected components of its empty squares,
+ * where squares are connected if they are adjacent horizontally,
+ * vertically, or diagonally, together with which sides' amazons border
+ * each region.  Once no region borders amazons of both sides, and no
+ * amazon is next to one of the other side (which could step into the
+ * square it leaves), the sides are separated, and each can only fill in
+ * its own regions.  A Board maintains one of these only on request (see
+ * Board.trackRegions).
+ *
+ * Regions only split as spears land, and merging them back as moves are
+ * undone is what a union-find structure cannot do.  So the regions are
+ * found lazily, by union-find over the whole board, the first time they
+ * are asked for in a position, and the result is kept on a stack with
+ * one frame per move made since the map was rebuilt.  makeMove just
+ * pushes an empty frame, and undo pops back to the frame for the
+ * position before, which remains valid.  A search that asks about many
+ * positions near the leaves thus pays for one union-find per position,
+ * and nothing for positions it only passes through.
+ *
+ * @author Amol Pant
+ */
+final class RegionMap {
+
+    /**
+     * A map describing the current position of BOARD.
+     */
+    RegionMap(Board board) {
+        rebuild(board);
+    }
+
+    /**
+     * A copy of MODEL, which can be updated independently, but cannot
+     * undo moves made before the copy.
+     */
+    RegionMap(RegionMap model) {
+        int n = model._parent.length;
+        allocate(n);
+        int p = model._ply;
+        _built[0] = model._built[p];
+        if (_built[0]) {
+            System.arraycopy(model._region[p], 0, _region[0], 0, n);
+            _size[0] = model._size[p].clone();
+            _borders[0] = model._borders[p].clone();
+            _count[0] = model._count[p];
+            _room[0][0] = model._room[p][0];
+            _room[0][1] = model._room[p][1];
+            _separated[0] = model._separated[p];
+        }
+    }
+
+    /**
+     * Forget all moves made before, so that the map describes BOARD's
+     * position, which will be examined when the regions are next needed.
+     */
+    void rebuild(Board board) {
+        int n = Board.size() * Board.size();
+        if (_parent == null || _parent.length != n) {
+            allocate(n);
+        }
+        _ply = 0;
+        _built[0] = false;
+    }
+
+    /**
+     * Update to reflect a move just made.
+     */
+    void makeMove() {
+        _ply += 1;
+        if (_ply == _built.length) {
+            int frames = 2 * _built.length;
+            _built = Arrays.copyOf(_built, frames);
+            _region = Arrays.copyOf(_region, frames);
+            _size = Arrays.copyOf(_size, frames);
+            _borders = Arrays.copyOf(_borders, frames);
+            _count = Arrays.copyOf(_count, frames);
+            _room = Arrays.copyOf(_room, frames);
+            _separated = Arrays.copyOf(_separated, frames);
+            for (int f = _ply; f < frames; f += 1) {
+                _room[f] = new int[2];
+            }
+        }
+        _built[_ply] = false;
+    }
+
+    /**
+     * Update to reflect undoing the last move made.  Returns false,
+     * having done nothing, if that move was made before I was last
+     * rebuilt or copied, in which case I must be rebuilt again.
+     */
+    boolean undo() {
+        if (_ply == 0) {
+            return false;
+        }
+        _ply -= 1;
+        return true;
+    }
+
+    /**
+     * Make sure the current frame describes BOARD, whose position must be
+     * the one I currently describe.
+     */
+    void update(Board board) {
+        if (!_built[_ply]) {
+            build(board);
+        }
+    }
+
+    /**
+     * Return the number of regions.
+     */
+    int regions() {
+        return _count[_ply];
+    }
+
+    /**
+     * Return the number (from 0 to regions() - 1) of the region
+     * containing the square with index SQ, or -1 if SQ is not empty.
+     */
+    int region(int sq) {
+        return _region[_ply][sq];
+    }
+
+    /**
+     * Return the number of squares in region R.
+     */
+    int size(int r) {
+        return _size[_ply][r];
+    }
+
+    /**
+     * Return true iff region R borders one of SIDE's amazons.
+     */
+    boolean borders(int r, Piece side) {
+        return (_borders[_ply][r] & bit(side)) != 0;
+    }
+
+    /**
+     * Return true iff no region borders amazons of both sides and no
+     * amazon is next to one of the other side.
+     */
+    boolean separated() {
+        return _separated[_ply];
+    }
+
+    /**
+     * Return the number of empty squares in the regions bordering SIDE's
+     * amazons: an upper bound on the number of moves SIDE can still
+     * make once the sides are separated.
+     */
+    int room(Piece side) {
+        return _room[_ply][side == WHITE ? 0 : 1];
+    }
+
+    /**
+     * Find the regions of BOARD and record them in the current frame.
+     */
+    private void build(Board board) {
+        int n = _parent.length, p = _ply;
+        for (int sq = 0; sq < n; sq += 1) {
+            _parent[sq] = board.get(sq) == EMPTY ? sq : -1;
+        }
+        for (int sq = 0; sq < n; sq += 1) {
+            if (_parent[sq] < 0) {
+                continue;
+            }
+            Square s = Square.sq(sq);
+            for (int dir = 0; dir < HALF_DIRECTIONS; dir += 1) {
+                int[] ray = s.ray(dir);
+                if (ray.length > 0 && _parent[ray[0]] >= 0) {
+                    union(sq, ray[0]);
+                }
+            }
+        }
+        if (_region[p] == null || _region[p].length != n) {
+            _region[p] = new int[n];
+            _size[p] = new int[n];
+            _borders[p] = new int[n];
+        }
+        int[] region = _region[p], size = _size[p], borders = _borders[p];
+        int count = 0;
+        for (int sq = 0; sq < n; sq += 1) {
+            if (_parent[sq] < 0) {
+                region[sq] = -1;
+            } else if (find(sq) == sq) {
+                region[sq] = count;
+                size[count] = 0;
+                borders[count] = 0;
+                count += 1;
+            }
+        }
+        for (int sq = 0; sq < n; sq += 1) {
+            if (_parent[sq] >= 0) {
+                region[sq] = region[find(sq)];
+                size[region[sq]] += 1;
+            }
+        }
+        boolean separated = true;
+        for (int sq = 0; sq < n; sq += 1) {
+            Piece piece = board.get(sq);
+            if (piece != WHITE && piece != BLACK) {
+                continue;
+            }
+            Square s = Square.sq(sq);
+            for (int dir = 0; dir < 8; dir += 1) {
+                int[] ray = s.ray(dir);
+                if (ray.length == 0) {
+                    continue;
+                } else if (region[ray[0]] >= 0) {
+                    borders[region[ray[0]]] |= bit(piece);
+                } else if (board.get(ray[0]) == piece.opponent()) {
+                    separated = false;
+                }
+            }
+        }
+        int whiteRoom = 0, blackRoom = 0;
+        for (int r = 0; r < count; r += 1) {
+            if (borders[r] == BOTH) {
+                separated = false;
+            }
+            if ((borders[r] & bit(WHITE)) != 0) {
+                whiteRoom += size[r];
+            }
+            if ((borders[r] & bit(BLACK)) != 0) {
+                blackRoom += size[r];
+            }
+        }
+        _count[p] = count;
+        _separated[p] = separated;
+        _room[p][0] = whiteRoom;
+        _room[p][1] = blackRoom;
+        _built[p] = true;
+    }
+
+    /**
+     * Return the representative of the set containing SQ in _parent,
+     * halving paths as it goes.
+     */
+    private int find(int sq) {
+        while (_parent[sq] != sq) {
+            _parent[sq] = _parent[_parent[sq]];
+            sq = _parent[sq];
+        }
+        return sq;
+    }
+
+    /**
+     * Merge the sets containing A and B in _parent.
+     */
+    private void union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a < b) {
+            _parent[b] = a;
+        } else if (b < a) {
+            _parent[a] = b;
+        }
+    }
+
+    /**
+     * Allocate space for a board of N squares, with room for
+     * INITIAL_FRAMES frames.
+     */
+    private void allocate(int n) {
+        _parent = new int[n];
+        _built = new boolean[INITIAL_FRAMES];
+        _region = new int[INITIAL_FRAMES][];
+        _size = new int[INITIAL_FRAMES][];
+        _borders = new int[INITIAL_FRAMES][];
+        _count = new int[INITIAL_FRAMES];
+        _room = new int[INITIAL_FRAMES][];
+        for (int f = 0; f < INITIAL_FRAMES; f += 1) {
+            _room[f] = new int[2];
+        }
+        _separated = new boolean[INITIAL_FRAMES];
+        _region[0] = new int[n];
+        _size[0] = new int[n];
+        _borders[0] = new int[n];
+        _ply = 0;
+    }
+
+    /**
+     * Return the bit in _borders that stands for SIDE's amazons.
+     */
+    private static int bit(Piece side) {
+        return side == WHITE ? 1 : 2;
+    }
+
+    /**
+     * The value in _borders of a region bordering both sides' amazons.
+     */
+    private static final int BOTH = 3;
+
+    /**
+     * The number of directions (north, northeast, east, and southeast)
+     * that link each pair of adjacent squares exactly once.
+     */
+    private static final int HALF_DIRECTIONS = 4;
+
+    /**
+     * The initial number of frames.
+     */
+    private static final int INITIAL_FRAMES = 64;
+
+    /**
+     * Scratch space for union-find: the parent of each empty square, or
+     * -1 for occupied squares.
+     */
+    private int[] _parent;
+    /**
+     * The index of the frame for the current position: the number of
+     * moves made since I was rebuilt or copied.
+     */
+    private int _ply;
+    /**
+     * _built[f] is true iff frame f has been filled in.
+     */
+    private boolean[] _built;
+    /**
+     * _region[f][sq] is the region of square sq in frame f, or -1.
+     */
+    private int[][] _region;
+    /**
+     * _size[f][r] is the number of squares in region r in frame f.
+     */
+    private int[][] _size;
+    /**
+     * _borders[f][r] has bit(side) set iff region r in frame f borders
+     * one of side's amazons.
+     */
+    private int[][] _borders;
+    /**
+     * _count[f] is the number of regions in frame f.
+     */
+    private int[] _count;
+    /**
+     * _room[f][0] and _room[f][1] are room(WHITE) and room(BLACK) in
+     * frame f.
+     */
+    private int[][] _room;
+    /**
+     * _separated[f] is separated() in frame f.
+     */
+    private boolean[] _separated;
+}
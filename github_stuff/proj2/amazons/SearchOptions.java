@@ -0,0 +1,191 @@
+package amazons;
+
+import static amazons.Utils.error;
+
+/**
+ * Switches and parameters that select variants of the alpha-beta search
+ * done by Searcher, so that the variants can be compared in self-play.
+ * Each has a name, by which set changes it (see the "option" command of
+ * Controller).  A Searcher consults its SearchOptions as it searches, so
+ * they should be changed only between searches.  Late move reductions
+ * and futility pruning apply only to time-limited searches
+ * (Searcher.deepen); searches to a fixed depth never prune, so that
+ * their results are reproducible however many threads do them.
+ *
+ * @author Amol Pant
+ */
+final class SearchOptions {
+
+    /**
+     * Set the option called NAME to VALUE, which is "on" or "off" for
+     * switches and a non-negative integer for parameters.
+     */
+    void set(String name, String value) {
+        switch (name) {
+        case "twostage":
+            _twoStage = flag(value);
+            break;
+        case "ordering":
+            _ordering = flag(value);
+            break;
+        case "lmr":
+            _lmr = flag(value);
+            break;
+        case "lmrdepth":
+            _lmrDepth = number(value);
+            break;
+        case "lmrmoves":
+            _lmrMoves = number(value);
+            break;
+        case "lmrreduction":
+            _lmrReduction = number(value);
+            break;
+        case "futility":
+            _futility = flag(value);
+            break;
+        case "futilitydepth":
+            _futilityDepth = number(value);
+            break;
+        case "futilitymargin":
+            _futilityMargin = number(value);
+            break;
+        default:
+            throw error("unknown search option: %s", name);
+        }
+    }
+
+    /**
+     * Return true iff searches are to split each move into a queen move
+     * and a spear throw, generating the throws for a queen move only
+     * when it comes to be searched.
+     */
+    boolean twoStage() {
+        return _twoStage;
+    }
+
+    /**
+     * Return true iff searches are to learn killer moves and history
+     * scores (see MoveOrdering) from the cutoffs they find, and so order
+     * moves by them.  Otherwise, only the hash move is put first, and
+     * the other moves are tried in the order they were generated.
+     */
+    boolean ordering() {
+        return _ordering;
+    }
+
+    /**
+     * Return true iff searches are to use late move reductions: at nodes
+     * with at least lmrDepth() moves to go, every move after the first
+     * lmrMoves() is first searched lmrReduction() moves less deep, and
+     * searched again to the full depth only if that shows it may be
+     * better than the best so far.
+     */
+    boolean lmr() {
+        return _lmr;
+    }
+
+    /**
+     * Return the least search depth at which moves are reduced.
+     */
+    int lmrDepth() {
+        return _lmrDepth;
+    }
+
+    /**
+     * Return the number of moves at each node that are never reduced.
+     */
+    int lmrMoves() {
+        return _lmrMoves;
+    }
+
+    /**
+     * Return the number of moves by which late moves are reduced.
+     */
+    int lmrReduction() {
+        return _lmrReduction;
+    }
+
+    /**
+     * Return true iff searches are to use futility pruning: at nodes
+     * with at most futilityDepth() moves to go, no moves are searched if
+     * the static value of the node, improved by futilityMargin() for
+     * each move to go, still cannot reach the best value already
+     * assured.
+     */
+    boolean futility() {
+        return _futility;
+    }
+
+    /**
+     * Return the greatest search depth at which nodes are pruned.
+     */
+    int futilityDepth() {
+        return _futilityDepth;
+    }
+
+    /**
+     * Return the amount by which one move is assumed to be able to
+     * improve the static value.
+     */
+    int futilityMargin() {
+        return _futilityMargin;
+    }
+
+    /**
+     * Return the switch setting denoted by VALUE ("on" or "off").
+     */
+    private static boolean flag(String value) {
+        switch (value) {
+        case "on":
+            return true;
+        case "off":
+            return false;
+        default:
+            throw error("expected on or off: %s", value);
+        }
+    }
+
+    /**
+     * Return the non-negative parameter value denoted by VALUE.
+     */
+    private static int number(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException excp) {
+            throw error("expected a number: %s", value);
+        }
+    }
+
+    /**
+     * True iff searches are two-stage (see twoStage).
+     */
+    private boolean _twoStage = true;
+
+    /**
+     * True iff searches order moves by killers and history (see
+     * ordering).
+     */
+    private boolean _ordering = true;
+
+    /**
+     * True iff searches use late move reductions (see lmr).
+     */
+    private boolean _lmr = true;
+
+    /**
+     * Parameters of late move reductions (see lmrDepth, lmrMoves, and
+     * lmrReduction).
+     */
+    private int _lmrDepth = 3, _lmrMoves = 8, _lmrReduction = 1;
+
+    /**
+     * True iff searches use futility pruning (see futility).
+     */
+    private boolean _futility = true;
+
+    /**
+     * Parameters of futility pruning (see futilityDepth and
+     * futilityMargin).
+     */
+    private int _futilityDepth = 1, _futilityMargin = 256;
+}
@@ -0,0 +1,476 @@
+package amazons;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the Searcher, ParallelSearch, MCTSTree, EvalCache,
+ * EndgameSolver, and ProofSearch classes.
+ *
+ * @author Amol Pant
+ */
+public class SearchTest {
+
+    /**
+     * Return a board on which MOVES random moves chosen with a generator
+     * seeded with SEED have been made.
+     */
+    private static Board randomPosition(long seed, int moves) {
+        Board b = new Board();
+        Random rand = new Random(seed);
+        int[] buf = new int[b.maxMoves()];
+        for (int k = 0; k < moves && b.winner() == null; k += 1) {
+            int n = b.generateMoves(b.turn(), buf);
+            b.makeMove(buf[rand.nextInt(n)]);
+        }
+        return b;
+    }
+
+    /**
+     * Return search options with all pruning turned off, and two-stage
+     * search set to TWOSTAGE ("on" or "off").
+     */
+    private static SearchOptions exhaustive(String twoStage) {
+        SearchOptions options = new SearchOptions();
+        options.set("lmr", "off");
+        options.set("futility", "off");
+        options.set("twostage", twoStage);
+        return options;
+    }
+
+    @Test
+    public void parallelMatchesSerialTests() {
+        checkParallelMatchesSerial(exhaustive("on"));
+        checkParallelMatchesSerial(new SearchOptions());
+    }
+
+    /**
+     * Check that ParallelSearch finds the same moves as
+     * Searcher.fixedDepthMove when both search as OPTIONS direct.
+     */
+    private void checkParallelMatchesSerial(SearchOptions options) {
+        TranspositionTable table = new TranspositionTable(16);
+        Evaluator eval = new TerritoryEvaluator();
+        Searcher serial = new Searcher(table, new AtomicBoolean(), eval,
+                                       null, options);
+        ParallelSearch parallel =
+            new ParallelSearch(table, 3, eval, 0, options);
+        try {
+            for (long seed = 1; seed <= 4; seed += 1) {
+                Board b = randomPosition(seed, 40);
+                if (b.winner() != null) {
+                    continue;
+                }
+                String before = b.toString();
+                int sense = b.turn() == Piece.WHITE ? 1 : -1;
+                for (int depth = 1; depth <= 3; depth += 1) {
+                    table.clear();
+                    int expected = serial.fixedDepthMove(b, sense, depth);
+                    assertTrue(b.isLegal(expected));
+                    table.clear();
+                    assertEquals(expected,
+                                 parallel.findMove(b, sense, depth));
+                    assertEquals(before, b.toString());
+                }
+            }
+        } finally {
+            parallel.shutdown();
+        }
+    }
+    @Test
+    public void twoStageTests() {
+        TranspositionTable table = new TranspositionTable(16);
+        SearchOptions split = exhaustive("on"), whole = exhaustive("off");
+        Searcher splitSearcher = new Searcher(table, new AtomicBoolean(),
+                                              new TerritoryEvaluator(),
+                                              null, split);
+        Searcher wholeSearcher = new Searcher(table, new AtomicBoolean(),
+                                              new TerritoryEvaluator(),
+                                              null, whole);
+        for (long seed = 7; seed <= 9; seed += 1) {
+            Board b = randomPosition(seed, 35);
+            if (b.winner() != null) {
+                continue;
+            }
+            String before = b.toString();
+            int sense = b.turn() == Piece.WHITE ? 1 : -1;
+            for (int depth = 1; depth <= 3; depth += 1) {
+                table.clear();
+                int expected =
+                    wholeSearcher.fixedDepthMove(b, sense, depth);
+                table.clear();
+                assertEquals(expected,
+                             splitSearcher.fixedDepthMove(b, sense, depth));
+                assertEquals(before, b.toString());
+            }
+        }
+    }
+
+    /**
+     * Return the value of BOARD according to EVAL, searched to DEPTH by
+     * a plain alpha-beta search with no table, ordering, or pruning,
+     * given that only values strictly between ALPHA and BETA are of
+     * interest.  Values are as for Searcher.findMove.
+     */
+    private static int alphaBeta(Board board, int depth, int alpha,
+                                 int beta, Evaluator eval) {
+        if (board.winner() == Piece.WHITE) {
+            return Searcher.WINNING_VALUE;
+        } else if (board.winner() == Piece.BLACK) {
+            return -Searcher.WINNING_VALUE;
+        } else if (depth == 0) {
+            return eval.evaluate(board);
+        }
+        boolean white = board.turn() == Piece.WHITE;
+        int best = white ? -Searcher.INFTY : Searcher.INFTY;
+        int[] moves = new int[board.maxMoves()];
+        int n = board.generateMoves(board.turn(), moves);
+        for (int k = 0; k < n && alpha < beta; k += 1) {
+            board.makeMove(moves[k]);
+            int value = alphaBeta(board, depth - 1, alpha, beta, eval);
+            board.undo();
+            if (white) {
+                best = Math.max(best, value);
+                alpha = Math.max(alpha, value);
+            } else {
+                best = Math.min(best, value);
+                beta = Math.min(beta, value);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return the value of MOVE on BOARD searched to DEPTH as for
+     * alphaBeta.
+     */
+    private static int moveValue(Board board, int move, int depth,
+                                 Evaluator eval) {
+        board.makeMove(move);
+        int value = alphaBeta(board, depth - 1, -Searcher.INFTY,
+                              Searcher.INFTY, eval);
+        board.undo();
+        return value;
+    }
+
+    @Test
+    public void aspirationTests() {
+        TranspositionTable table = new TranspositionTable(16);
+        Evaluator eval = new TerritoryEvaluator();
+        Searcher searcher = new Searcher(table, new AtomicBoolean(), eval,
+                                         null, exhaustive("on"));
+        for (long seed = 1; seed <= 4; seed += 1) {
+            Board b = randomPosition(seed, 50);
+            if (b.winner() != null) {
+                continue;
+            }
+            String before = b.toString();
+            int sense = b.turn() == Piece.WHITE ? 1 : -1;
+            for (int depth = 1; depth <= 3; depth += 1) {
+                int value = alphaBeta(b, depth, -Searcher.INFTY,
+                                      Searcher.INFTY, eval);
+                table.clear();
+                int plain = searcher.fixedDepthMove(b, sense, depth);
+                table.clear();
+                searcher.deepen(b, sense, Long.MAX_VALUE, 0, depth);
+                assertEquals(depth, searcher.completedDepth());
+                int windowed = searcher.bestMove();
+                assertEquals(before, b.toString());
+                assertEquals(value, moveValue(b, plain, depth, eval));
+                assertEquals(value, moveValue(b, windowed, depth, eval));
+            }
+        }
+    }
+
+    @Test
+    public void orderingTests() {
+        TranspositionTable table = new TranspositionTable(16);
+        SearchOptions unordered = exhaustive("on");
+        unordered.set("ordering", "off");
+        Searcher ordered = new Searcher(table, new AtomicBoolean(),
+                                        new TerritoryEvaluator(), null,
+                                        exhaustive("on"));
+        Searcher plain = new Searcher(table, new AtomicBoolean(),
+                                      new TerritoryEvaluator(), null,
+                                      unordered);
+        long orderedNodes = 0, plainNodes = 0;
+        for (long seed = 15; seed <= 17; seed += 1) {
+            Board b = randomPosition(seed, 40);
+            if (b.winner() != null) {
+                continue;
+            }
+            String before = b.toString();
+            int sense = b.turn() == Piece.WHITE ? 1 : -1;
+            table.clear();
+            int expected = plain.fixedDepthMove(b, sense, 3);
+            plainNodes += plain.nodes();
+            table.clear();
+            assertEquals(expected, ordered.fixedDepthMove(b, sense, 3));
+            orderedNodes += ordered.nodes();
+            assertEquals(before, b.toString());
+        }
+        assertTrue(orderedNodes < plainNodes);
+    }
+
+    @Test
+    public void selectiveTests() {
+        TranspositionTable table = new TranspositionTable(16);
+        Searcher full = new Searcher(table, new AtomicBoolean(),
+                                     new TerritoryEvaluator(), null,
+                                     exhaustive("on"));
+        Searcher pruned = new Searcher(table, new AtomicBoolean(),
+                                       new TerritoryEvaluator(), null,
+                                       new SearchOptions());
+        long fullNodes = 0, prunedNodes = 0;
+        for (long seed = 10; seed <= 12; seed += 1) {
+            Board b = randomPosition(seed, 30);
+            if (b.winner() != null) {
+                continue;
+            }
+            String before = b.toString();
+            int sense = b.turn() == Piece.WHITE ? 1 : -1;
+            table.clear();
+            full.deepen(b, sense, Long.MAX_VALUE, 0, 4);
+            fullNodes += full.nodes();
+            table.clear();
+            pruned.deepen(b, sense, Long.MAX_VALUE, 0, 4);
+            assertTrue(b.isLegal(pruned.bestMove()));
+            prunedNodes += pruned.nodes();
+            assertEquals(before, b.toString());
+        }
+        assertTrue(prunedNodes < fullNodes);
+    }
+
+    @Test
+    public void deadlineTests() {
+        TranspositionTable table = new TranspositionTable(16);
+        Searcher searcher = new Searcher(table, new AtomicBoolean(),
+                                         new TerritoryEvaluator());
+        for (long seed = 18; seed <= 19; seed += 1) {
+            Board b = randomPosition(seed, 20);
+            String before = b.toString();
+            int sense = b.turn() == Piece.WHITE ? 1 : -1;
+            table.clear();
+            long start = System.currentTimeMillis();
+            searcher.deepen(b, sense, start + 100, 0);
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue(elapsed < 100 + DEADLINE_SLACK);
+            assertTrue(searcher.completedDepth() >= 1);
+            assertTrue(searcher.completedDepth() < b.numEmpty());
+            assertTrue(b.isLegal(searcher.bestMove()));
+            assertEquals(before, b.toString());
+        }
+    }
+
+    /**
+     * The time (in milliseconds) by which a search may overrun its
+     * deadline.
+     */
+    private static final long DEADLINE_SLACK = 500;
+
+    @Test
+    public void lazySMPTests() {
+        TranspositionTable table = new TranspositionTable(16);
+        AtomicBoolean stop = new AtomicBoolean();
+        Searcher[] searchers = new Searcher[3];
+        for (int i = 0; i < searchers.length; i += 1) {
+            searchers[i] = new Searcher(table, stop,
+                                        new TerritoryEvaluator(), null,
+                                        new SearchOptions());
+        }
+        for (long seed = 13; seed <= 14; seed += 1) {
+            Board b = randomPosition(seed, 30);
+            if (b.winner() != null) {
+                continue;
+            }
+            String before = b.toString();
+            long key = b.key();
+            int move = AI.deepen(searchers, stop, b,
+                                 System.currentTimeMillis() + 300);
+            assertTrue(b.isLegal(move));
+            assertEquals(before, b.toString());
+            assertEquals(key, b.key());
+            assertTrue(stop.get());
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                assertFalse(thread.getName().startsWith(AI.HELPER_NAME)
+                            && thread.isAlive());
+            }
+        }
+    }
+
+    @Test
+    public void evalCacheTests() {
+        EvalCache cache = new EvalCache(4);
+        assertEquals(16, cache.size());
+        long key = 0x123456789ABCDEFL;
+        assertEquals(EvalCache.MISSING, cache.probe(key));
+        cache.store(key, -1234567);
+        assertEquals(-1234567, cache.probe(key));
+        assertEquals(EvalCache.MISSING, cache.probe(key ^ 1L << 40));
+        assertEquals(EvalCache.MISSING, cache.probe(0));
+        cache.store(key ^ 1L << 40, 5);
+        assertEquals(EvalCache.MISSING, cache.probe(key));
+        assertEquals(1, cache.hits());
+        assertEquals(4, cache.misses());
+        cache.clear();
+        assertEquals(EvalCache.MISSING, cache.probe(key ^ 1L << 40));
+        assertEquals(0, cache.hits());
+        EvalCache other = new EvalCache(4);
+        other.store(key, 1);
+        other.probe(key);
+        assertEquals("2 caches, 1 hits, 1 misses (50.0% hits)",
+                     EvalCache.summary(Arrays.asList(cache, other)));
+
+        TranspositionTable table = new TranspositionTable(16);
+        Searcher plain = new Searcher(table, new AtomicBoolean(),
+                                      new TerritoryEvaluator());
+        Searcher cached = new Searcher(table, new AtomicBoolean(),
+                                       new TerritoryEvaluator(),
+                                       new EvalCache(12),
+                                       new SearchOptions());
+        Board b = randomPosition(6, 30);
+        int sense = b.turn() == Piece.WHITE ? 1 : -1;
+        for (int depth = 1; depth <= 3; depth += 1) {
+            table.clear();
+            int expected = plain.fixedDepthMove(b, sense, depth);
+            table.clear();
+            assertEquals(expected, cached.fixedDepthMove(b, sense, depth));
+        }
+        assertTrue(cached.evalCache().hits() > 0);
+    }
+
+    @Test
+    public void mctsTests() {
+        Board b = randomPosition(5, 20);
+        MCTSTree tree = new MCTSTree(1 << 12);
+        tree.moveTo(b);
+        Board copy = tree.position();
+        String before = copy.toString();
+        Random rand = new Random(5);
+        int[] buf = new int[tree.bufferSize()];
+        int[] path = new int[tree.pathSize()];
+        for (int k = 0; k < 3000; k += 1) {
+            tree.iterate(copy, rand, buf, path);
+        }
+        assertEquals(before, copy.toString());
+        assertEquals(3000, tree.visits());
+        assertTrue(tree.size() <= 1 << 12);
+        int move = tree.bestMove();
+        assertTrue(b.isLegal(move));
+        tree.advance(move);
+        b.makeMove(move);
+        assertTrue(tree.visits() > 0);
+        tree.moveTo(b);
+        assertTrue(tree.visits() > 0);
+        assertEquals(b.toString(), tree.position().toString());
+    }
+
+    @Test
+    public void endgameTests() {
+        EndgameSolver solver = new EndgameSolver(1 << 16, 12);
+        Board b = new Board();
+        assertFalse(solver.solve(b));
+        for (int sq = 0; sq < 100; sq += 1) {
+            b.put(Piece.SPEAR, sq);
+        }
+        for (char col = 'a'; col <= 'j'; col += 1) {
+            for (String row : new String[] { "1", "2", "9", "10" }) {
+                b.put(Piece.EMPTY, Square.sq(col + row));
+            }
+        }
+        b.put(Piece.WHITE, Square.sq("d1"));
+        b.put(Piece.WHITE, Square.sq("g1"));
+        b.put(Piece.BLACK, Square.sq("d10"));
+        b.put(Piece.BLACK, Square.sq("g10"));
+        assertTrue(solver.solve(b));
+        assertEquals(18, solver.moves(Piece.WHITE));
+        assertEquals(18, solver.moves(Piece.BLACK));
+        assertTrue(b.isLegal(solver.bestMove()));
+
+        b = new Board();
+        for (int sq = 0; sq < 100; sq += 1) {
+            b.put(Piece.SPEAR, sq);
+        }
+        b.put(Piece.WHITE, Square.sq("b2"));
+        b.put(Piece.EMPTY, Square.sq("a3"));
+        b.put(Piece.EMPTY, Square.sq("c3"));
+        b.put(Piece.BLACK, Square.sq("j10"));
+        b.put(Piece.EMPTY, Square.sq("j9"));
+        b.put(Piece.EMPTY, Square.sq("j8"));
+        String before = b.toString();
+        assertTrue(solver.solve(b));
+        assertEquals(before, b.toString());
+        assertEquals(1, solver.moves(Piece.WHITE));
+        assertEquals(2, solver.moves(Piece.BLACK));
+        assertTrue(b.isLegal(solver.bestMove()));
+
+        b.put(Piece.SPEAR, Square.sq("b2"));
+        b.put(Piece.WHITE, Square.sq("i10"));
+        before = b.toString();
+        assertFalse(solver.solve(b));
+        assertEquals(before, b.toString());
+    }
+
+    /**
+     * Return true iff the side to move on BOARD has a forced win, found
+     * by examining every line of play.
+     */
+    private static boolean wins(Board board) {
+        int[] moves = new int[board.maxMoves()];
+        int n = board.generateMoves(board.turn(), moves);
+        for (int k = 0; k < n; k += 1) {
+            board.makeMove(moves[k]);
+            boolean lost = !wins(board);
+            board.undo();
+            if (lost) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void proofTests() {
+        ProofSearch proof = new ProofSearch(16);
+        Board b = new Board();
+        for (int sq = 0; sq < 100; sq += 1) {
+            b.put(Piece.SPEAR, sq);
+        }
+        b.put(Piece.EMPTY, Square.sq("a1"));
+        b.put(Piece.EMPTY, Square.sq("b1"));
+        b.put(Piece.WHITE, Square.sq("c1"));
+        b.put(Piece.BLACK, Square.sq("d2"));
+        String before = b.toString();
+        assertEquals(ProofSearch.WIN, proof.solve(b, 1000));
+        assertEquals(before, b.toString());
+        int move = proof.bestMove();
+        assertTrue(b.isLegal(move));
+        assertEquals(Square.sq("c1").index(), Move.spear(move));
+        assertFalse(proof.provenLoss(b, move));
+        b.makeMove(move);
+        assertEquals(ProofSearch.LOSS, proof.solve(b, 1000));
+        assertEquals(TranspositionTable.NO_MOVE, proof.bestMove());
+
+        Random rand = new Random(17);
+        for (int k = 0; k < 20; k += 1) {
+            b = new Board();
+            int[] moves = new int[b.maxMoves()];
+            while (b.winner() == null && b.numEmpty() > 12) {
+                int n = b.generateMoves(b.turn(), moves);
+                b.makeMove(moves[rand.nextInt(n)]);
+            }
+            int result = proof.solve(b, 1 << 16);
+            assertTrue(result != ProofSearch.UNKNOWN);
+            assertEquals(wins(b), result == ProofSearch.WIN);
+            if (result == ProofSearch.WIN) {
+                b.makeMove(proof.bestMove());
+                assertFalse(wins(b));
+            }
+        }
+    }
+}
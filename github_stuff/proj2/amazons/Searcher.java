@@ -0,0 +1,627 @@
+package amazons;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.Math.*;
+
+import static amazons.Piece.*;
+
+/**
+ * An alpha-beta game-tree searcher, used by AI to choose moves.  A
+ * Searcher holds all the mutable state of one search (move buffers,
+ * killer moves and history, node counts), so that several Searchers can
+ * search the same position at once in different threads.  The only state
+ * they share is a TranspositionTable and a flag telling them to stop.
+ * Positions at the leaves of the search are valued by an Evaluator.
+ *
+ * @author Amol Pant
+ */
+final class Searcher {
+
+    /**
+     * A position magnitude indicating a win (for white if positive, black
+     * if negative).  It is far below Integer.MAX_VALUE, so that values
+     * and bounds near it can be negated, offset to form null and
+     * aspiration windows, and compared without overflow.
+     */
+    static final int WINNING_VALUE = 1 << 28;
+    /**
+     * A magnitude greater than any value.
+     */
+    static final int INFTY = WINNING_VALUE + 1;
+
+    /**
+     * A move value denoting no move.
+     */
+    static final int NO_MOVE = TranspositionTable.NO_MOVE;
+
+    /**
+     * A Searcher that values positions with EVALUATOR, records results in
+     * TABLE, and stops searching as soon as it notices that STOP is set.
+     * EVALUATOR must not be used by any other Searcher.
+     */
+    Searcher(TranspositionTable table, AtomicBoolean stop,
+             Evaluator evaluator) {
+        this(table, stop, evaluator, null, new SearchOptions());
+    }
+
+    /**
+     * A Searcher as for Searcher(TABLE, STOP, EVALUATOR) that also keeps
+     * the values EVALUATOR gives in CACHE, unless it is null, and searches
+     * as OPTIONS direct.  CACHE must not be used by any other Searcher,
+     * and must hold only values given by evaluators of the same kind as
+     * EVALUATOR.
+     */
+    Searcher(TranspositionTable table, AtomicBoolean stop,
+             Evaluator evaluator, EvalCache cache, SearchOptions options) {
+        _table = table;
+        _stop = stop;
+        _evaluator = evaluator;
+        _cache = cache;
+        _options = options;
+    }
+
+    /**
+     * Search BOARD to successively greater depths for the best move for
+     * the side whose SENSE is given (as for findMove), until the time
+     * (in milliseconds, as for System.currentTimeMillis) reaches
+     * DEADLINE, the stop flag is set, the game's outcome is known, or the
+     * depth reaches the number of moves left in the game.  The first
+     * search is to depth 1 + SKEW; Searchers running at the same time
+     * are given different SKEWs so that they are not all working at the
+     * same depth.  Afterwards, bestMove is the best move found by the
+     * last completed search, or by the last partial search if it proved
+     * a move better than the previous best.  Unless the stop flag is set,
+     * always completes the first search.  Leaves BOARD as it found it.
+     *
+     * Each search after the first starts with an aspiration window of
+     * ASPIRATION on either side of the previous search's value.  If the
+     * value falls outside it, the search is repeated with the window
+     * widened on that side, up to the full window.
+     *
+     * These searches are selective as my options direct.
+     */
+    void deepen(Board board, int sense, long deadline, int skew) {
+        deepen(board, sense, deadline, skew, board.numEmpty());
+    }
+
+    /**
+     * As for deepen(BOARD, SENSE, DEADLINE, SKEW), but searching to at
+     * most MAXDEPTH.
+     */
+    void deepen(Board board, int sense, long deadline, int skew,
+                int maxDepth) {
+        _ordering.newSearch(board.numEmpty());
+        start(board, deadline, true);
+        int value = 0;
+        for (int depth = 1 + skew; depth <= maxDepth; depth += 1) {
+            int delta = ASPIRATION;
+            int alpha = -INFTY, beta = INFTY;
+            if (_completedDepth > 0) {
+                alpha = window(value - delta);
+                beta = window(value + delta);
+            }
+            while (true) {
+                _iterationMove = NO_MOVE;
+                value = findMove(board, depth, true, sense, alpha, beta);
+                if (_iterationMove != NO_MOVE) {
+                    _lastFoundMove = _iterationMove;
+                }
+                if (_aborted || (value > alpha && value < beta)) {
+                    break;
+                }
+                delta *= ASPIRATION_GROWTH;
+                if (value <= alpha) {
+                    alpha = window(value - delta);
+                } else {
+                    beta = window(value + delta);
+                }
+            }
+            if (_aborted) {
+                break;
+            }
+            _completedDepth = depth;
+            if (abs(value) == WINNING_VALUE) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Return BOUND as an aspiration window bound: BOUND itself if it
+     * lies strictly between the values of a loss and a win, and
+     * otherwise -INFTY or INFTY, so that wins and losses are always
+     * found exactly.
+     */
+    private static int window(int bound) {
+        if (bound <= -WINNING_VALUE) {
+            return -INFTY;
+        } else if (bound >= WINNING_VALUE) {
+            return INFTY;
+        }
+        return bound;
+    }
+
+    /**
+     * Return the move (in packed form) that a search of BOARD to exactly
+     * DEPTH finds for the side whose SENSE is given (as for findMove),
+     * or NO_MOVE if there are no moves.  Starts with no history, and
+     * searches moves at the root in the order that Board.generateMoves
+     * produces them, so that the result is the first move in that order
+     * with the best value.  The search is never selective, whatever my
+     * options, so that if the transposition table holds no results from
+     * searches to depths greater than DEPTH at the start, the result
+     * depends only on BOARD and DEPTH.  Leaves BOARD as it found it.
+     */
+    int fixedDepthMove(Board board, int sense, int depth) {
+        _ordering.clearHistory();
+        start(board, Long.MAX_VALUE, false);
+        _iterationMove = NO_MOVE;
+        findMove(board, depth, true, sense, -INFTY, INFTY);
+        _lastFoundMove = _iterationMove;
+        return _lastFoundMove;
+    }
+
+    /**
+     * Return the value of BOARD found by a search to DEPTH with no time
+     * limit, given that the side whose SENSE is given (as for findMove)
+     * is to move, and that only values strictly between ALPHA and BETA
+     * are of interest.  The result is as for findMove.  As for
+     * fixedDepthMove, the search is never selective.  Leaves BOARD as it
+     * found it.
+     */
+    int search(Board board, int sense, int depth, int alpha, int beta) {
+        start(board, Long.MAX_VALUE, false);
+        return findMove(board, depth, false, sense, alpha, beta);
+    }
+
+    /**
+     * Prepare to search from BOARD until DEADLINE (as for deepen), keeping
+     * the history scores of previous searches if my options order moves
+     * by them.  The search is selective (as my options direct) iff
+     * SELECTIVE.
+     */
+    private void start(Board board, long deadline, boolean selective) {
+        _deadline = deadline;
+        _selective = selective;
+        _aborted = false;
+        _nodes = 0;
+        _lastFoundMove = NO_MOVE;
+        _completedDepth = 0;
+        _maxMoves = board.maxMoves();
+        _maxQueenMoves = board.maxQueenMoves();
+        _rootPly = board.numMoves();
+        _ordering.resetKillers(board.numEmpty());
+        if (!_options.ordering()) {
+            _ordering.clearHistory();
+        }
+    }
+
+    /**
+     * Return the move (in packed form) found by the last call to deepen,
+     * or NO_MOVE if it was stopped before finding one.
+     */
+    int bestMove() {
+        return _lastFoundMove;
+    }
+
+    /**
+     * Return the depth of the last search by the last call to deepen that
+     * was completed, or 0 if there was none.
+     */
+    int completedDepth() {
+        return _completedDepth;
+    }
+
+    /**
+     * Return the number of positions searched by the last call to
+     * deepen, not counting those evaluated statically.
+     */
+    long nodes() {
+        return _nodes;
+    }
+
+    /**
+     * Return my cache of static evaluations, or null if I have none.
+     */
+    EvalCache evalCache() {
+        return _cache;
+    }
+
+    /**
+     * Find a move from position BOARD and return its value, recording
+     * the move found in _iterationMove iff SAVEMOVE. The move
+     * should have maximal value or have value > BETA if SENSE==1,
+     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
+     * DEPTH levels.  Searching at level 0 simply returns a static estimate
+     * of the board value and does not set _iterationMove.  Explores the
+     * tree by making and undoing moves on BOARD, which it leaves as it
+     * found it.  If time runs out (see outOfTime), sets _aborted and
+     * returns a meaningless value; in that case, _iterationMove is the
+     * best of the moves whose search was completed.  Positions are first
+     * looked up in _table, whose results may make searching them
+     * unnecessary, and the results of completed searches are recorded
+     * there.  Moves are tried in the order given by _ordering (if
+     * _options.ordering(); otherwise in the order generated), starting
+     * with the best move recorded in _table or, when SAVEMOVE, with
+     * _lastFoundMove, the best move found at the previous depth, so that
+     * a search cut short is still useful.
+     *
+     * This is a principal variation search: the first move is searched
+     * with the full window, and each later move first with a null window
+     * at the best value so far, which only tells whether the move is
+     * better.  Only a move that proves better is searched again with the
+     * full window.  When SAVEMOVE, _iterationMove is set only by a move
+     * whose value exceeds the window (for the side to move), so that it
+     * is left unset if the search fails low.
+     *
+     * If _options.twoStage(), each move is taken in two stages: the
+     * queen moves are ordered first, and the spear throws that complete a
+     * queen move are generated and ordered only when that queen move
+     * comes to be searched, so that a cutoff saves generating the rest.
+     *
+     * If _selective, the search prunes as _options direct (see
+     * SearchOptions): late moves may be searched first to a reduced
+     * depth, and nodes near the leaves whose static value is too far
+     * outside the window are not searched at all.
+     */
+    private int findMove(Board board, int depth, boolean saveMove, int sense,
+                         int alpha, int beta) {
+        if (depth == 0 || board.winner() != null) {
+            return staticScore(board);
+        }
+        if (outOfTime()) {
+            return 0;
+        }
+        long key = board.key();
+        long entry = _table.probe(key);
+        if (!saveMove && entry != 0
+            && TranspositionTable.depth(entry) >= depth) {
+            int score = TranspositionTable.score(entry);
+            switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.LOWER:
+                alpha = max(alpha, score);
+                break;
+            case TranspositionTable.UPPER:
+                beta = min(beta, score);
+                break;
+            default:
+                return score;
+            }
+            if (beta <= alpha) {
+                return score;
+            }
+        }
+        if (!saveMove && _selective && _options.futility()
+            && depth <= _options.futilityDepth()) {
+            int margin = _options.futilityMargin() * depth;
+            int stand = staticScore(board);
+            if (sense == 1 && stand + margin <= alpha) {
+                return stand + margin;
+            } else if (sense == -1 && stand - margin >= beta) {
+                return stand - margin;
+            }
+        }
+        int bestEval = sense == 1 ? -INFTY : INFTY;
+        int bestMove = NO_MOVE;
+        int alpha0 = alpha, beta0 = beta;
+        int[] moves = moveBuffer(depth), scores = scoreBuffer(depth);
+        int ply = board.numMoves() - _rootPly;
+        int hashMove = saveMove ? _lastFoundMove
+            : entry == 0 ? NO_MOVE : TranspositionTable.move(entry);
+        boolean twoStage = _options.twoStage();
+        int[] queens = queenBuffer(depth), queenScores = _queenScores[depth];
+        int groups = 1;
+        if (twoStage) {
+            groups = board.generateQueenMoves(board.turn(), queens);
+            _ordering.scoreQueenMoves(queens, queenScores, groups,
+                                      hashMove, ply);
+        }
+        boolean done = false;
+        for (int g = 0, k = 0; g < groups && !done; g += 1) {
+            int n;
+            if (twoStage) {
+                int queen =
+                    MoveOrdering.select(queens, queenScores, g, groups);
+                n = completions(board, queen, moves);
+            } else {
+                n = board.generateMoves(board.turn(), moves);
+            }
+            _ordering.score(moves, scores, n, hashMove, ply);
+            for (int i = 0; i < n && !done; i += 1, k += 1) {
+                int movement = MoveOrdering.select(moves, scores, i, n);
+                board.makeMove(movement);
+                int eval;
+                int reduced = depth - 1 - reduction(depth, k);
+                if (k == 0 || depth == 1) {
+                    eval = findMove(board, depth - 1, false, -sense,
+                                    alpha, beta);
+                } else if (sense == 1) {
+                    eval = findMove(board, reduced, false, -sense,
+                                    alpha, alpha + 1);
+                    if (reduced < depth - 1 && eval > alpha && !_aborted) {
+                        eval = findMove(board, depth - 1, false, -sense,
+                                        alpha, alpha + 1);
+                    }
+                    if (eval > alpha && eval < beta && !_aborted) {
+                        eval = findMove(board, depth - 1, false, -sense,
+                                        eval, beta);
+                    }
+                } else {
+                    eval = findMove(board, reduced, false, -sense,
+                                    beta - 1, beta);
+                    if (reduced < depth - 1 && eval < beta && !_aborted) {
+                        eval = findMove(board, depth - 1, false, -sense,
+                                        beta - 1, beta);
+                    }
+                    if (eval < beta && eval > alpha && !_aborted) {
+                        eval = findMove(board, depth - 1, false, -sense,
+                                        alpha, eval);
+                    }
+                }
+                board.undo();
+                if (_aborted) {
+                    break;
+                }
+                if (saveMove && (sense == 1 ? eval > alpha : eval < beta)) {
+                    _iterationMove = movement;
+                }
+                if (sense == 1 ? eval > bestEval : eval < bestEval) {
+                    bestEval = eval;
+                    bestMove = movement;
+                }
+                if (sense == 1) {
+                    alpha = max(alpha, eval);
+                } else {
+                    beta = min(beta, eval);
+                }
+                if (beta <= alpha) {
+                    if (_options.ordering()) {
+                        _ordering.cutoff(movement, ply, depth);
+                    }
+                    done = true;
+                }
+            }
+            done |= _aborted;
+        }
+        if (!_aborted) {
+            int bound = bestEval <= alpha0 ? TranspositionTable.UPPER
+                : bestEval >= beta0 ? TranspositionTable.LOWER
+                : TranspositionTable.EXACT;
+            _table.store(key, depth, bound, bestEval, bestMove);
+        }
+        return bestEval;
+    }
+
+    /**
+     * Return the number of moves by which to reduce the null-window
+     * search of the Kth move (numbering from 0) at a node with DEPTH
+     * moves to go, as _options direct.
+     */
+    private int reduction(int depth, int k) {
+        if (!_selective || !_options.lmr() || depth < _options.lmrDepth()
+            || k < _options.lmrMoves()) {
+            return 0;
+        }
+        return min(_options.lmrReduction(), depth - 1);
+    }
+
+    /**
+     * Return true iff the current search should stop because its time is
+     * up or the stop flag is set, setting _aborted if so.  Consults the
+     * clock and flag only every CLOCK_INTERVAL calls, and ignores the clock
+     * until a first move has been found.
+     */
+    private boolean outOfTime() {
+        _nodes += 1;
+        if (!_aborted && _nodes % CLOCK_INTERVAL == 0) {
+            _aborted = _stop.get()
+                || (_lastFoundMove != NO_MOVE
+                    && System.currentTimeMillis() >= _deadline);
+        }
+        return _aborted;
+    }
+
+    /**
+     * Return the move buffer for use by searches at ply DEPTH, creating
+     * it and the corresponding score buffer if needed.  There is one
+     * buffer per ply, reused across nodes.
+     */
+    private int[] moveBuffer(int depth) {
+        if (depth >= _moveBuffers.length) {
+            _moveBuffers = Arrays.copyOf(_moveBuffers, depth + 1);
+            _scoreBuffers = Arrays.copyOf(_scoreBuffers, depth + 1);
+            _queenBuffers = Arrays.copyOf(_queenBuffers, depth + 1);
+            _queenScores = Arrays.copyOf(_queenScores, depth + 1);
+        }
+        if (_moveBuffers[depth] == null
+            || _moveBuffers[depth].length < _maxMoves) {
+            _moveBuffers[depth] = new int[_maxMoves];
+            _scoreBuffers[depth] = new int[_maxMoves];
+            _queenBuffers[depth] = new int[_maxQueenMoves];
+            _queenScores[depth] = new int[_maxQueenMoves];
+        }
+        return _moveBuffers[depth];
+    }
+
+    /**
+     * Return the buffer of queen moves for use by searches at ply DEPTH,
+     * which must already have a move buffer.  _queenScores[DEPTH] holds
+     * their priorities.
+     */
+    private int[] queenBuffer(int depth) {
+        return _queenBuffers[depth];
+    }
+
+    /**
+     * Store in MOVES the legal moves on BOARD, for the side to move, that
+     * begin with the queen move QUEEN (packed as by
+     * Board.generateQueenMoves), and return their number.
+     */
+    private static int completions(Board board, int queen, int[] moves) {
+        int from = Move.from(queen), to = Move.to(queen);
+        int n = board.generateSpears(from, to, moves);
+        for (int i = 0; i < n; i += 1) {
+            moves[i] = Move.pack(from, to, moves[i]);
+        }
+        return n;
+    }
+
+    /**
+     * Return the buffer of move priorities for use by searches at ply
+     * DEPTH, which must already have a move buffer.
+     */
+    private int[] scoreBuffer(int depth) {
+        return _scoreBuffers[depth];
+    }
+
+    /**
+     * Return a heuristic value for BOARD: +-WINNING_VALUE if the game is
+     * over, and otherwise the value given by _evaluator, taken from
+     * _cache if it is there.
+     */
+    private int staticScore(Board board) {
+        Piece winner = board.winner();
+        if (winner == BLACK) {
+            return -WINNING_VALUE;
+        } else if (winner == WHITE) {
+            return WINNING_VALUE;
+        }
+        if (_cache == null) {
+            return _evaluator.evaluate(board);
+        }
+        long key = board.key();
+        int value = _cache.probe(key);
+        if (value == EvalCache.MISSING) {
+            value = _evaluator.evaluate(board);
+            _cache.store(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * The half-width of the first aspiration window of each search after
+     * the first in deepen.
+     */
+    private static final int ASPIRATION = 32;
+
+    /**
+     * The factor by which the aspiration window grows on a failed search.
+     */
+    private static final int ASPIRATION_GROWTH = 4;
+
+    /**
+     * Number of searched positions between checks of the clock.  Each
+     * position next to the leaves evaluates every one of its moves, so
+     * this is kept small, lest the search overrun its deadline.
+     */
+    private static final int CLOCK_INTERVAL = 16;
+
+    /**
+     * Results of previous searches, shared with other Searchers.
+     */
+    private final TranspositionTable _table;
+
+    /**
+     * Set when all Searchers using _table should stop.
+     */
+    private final AtomicBoolean _stop;
+
+    /**
+     * The static evaluation function, used only by me.
+     */
+    private final Evaluator _evaluator;
+
+    /**
+     * Values previously given by _evaluator, or null if I do not keep
+     * them.
+     */
+    private final EvalCache _cache;
+
+    /**
+     * The variant of the search to do.
+     */
+    private final SearchOptions _options;
+
+    /**
+     * True iff the current search prunes and reduces as _options direct.
+     */
+    private boolean _selective;
+
+    /**
+     * Killer moves and history scores for ordering moves.
+     */
+    private final MoveOrdering _ordering = new MoveOrdering();
+
+    /**
+     * The move found by the last completed (or usable partial) search of
+     * the current call to deepen, in packed form, or NO_MOVE if none.
+     */
+    private int _lastFoundMove = NO_MOVE;
+
+    /**
+     * The depth of the last completed search of the current call to
+     * deepen.
+     */
+    private int _completedDepth;
+
+    /**
+     * The best move found so far in the current iteration of deepen.
+     */
+    private int _iterationMove;
+
+    /**
+     * The time at which the current search must stop (as for
+     * System.currentTimeMillis).
+     */
+    private long _deadline;
+
+    /**
+     * True iff the current search has run out of time or been stopped.
+     */
+    private boolean _aborted;
+
+    /**
+     * The number of positions searched so far in the current search.
+     */
+    private long _nodes;
+
+    /**
+     * The number of moves made before the position at the root of the
+     * current search.
+     */
+    private int _rootPly;
+
+    /**
+     * The size needed for move buffers in the current search.
+     */
+    private int _maxMoves;
+
+    /**
+     * The size needed for queen-move buffers in the current search.
+     */
+    private int _maxQueenMoves;
+
+    /**
+     * Move buffers, indexed by remaining search depth.
+     */
+    private int[][] _moveBuffers = new int[0][];
+
+    /**
+     * Move priority buffers (see MoveOrdering), indexed by remaining
+     * search depth.
+     */
+    private int[][] _scoreBuffers = new int[0][];
+
+    /**
+     * Queen-move buffers for two-stage searches, indexed by remaining
+     * search depth.
+     */
+    private int[][] _queenBuffers = new int[0][];
+
+    /**
+     * Priorities of the moves in the corresponding _queenBuffers.
+     */
+    private int[][] _queenScores = new int[0][];
+}
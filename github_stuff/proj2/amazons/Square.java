@@ -8,13 +8,15 @@ import static amazons.Utils.*;
 
 /**
  * Represents a position on an Amazons board.  Positions are numbered
- * from 0 (lower-left corner) to 99 (upper-right corner).  Squares
- * are immutable and unique: there is precisely one square created for
- * each distinct position.  Clients create squares using the factory method
- * sq, not the constructor.  Because there is a unique Square object for each
- * position, you can freely use the cheap == operator (rather than the
- * .equals method) to compare Squares, and the program does not waste time
- * creating the same square over and over again.
+ * from 0 (lower-left corner) to N*N-1 (upper-right corner), where N is
+ * Board.size() (99 on the standard board).  Squares are immutable and
+ * unique: there is precisely one square created for each distinct
+ * position on each size of board.  Clients create squares using the
+ * factory method sq, not the constructor.  Because there is a unique
+ * Square object for each position, you can freely use the cheap ==
+ * operator (rather than the .equals method) to compare Squares, and the
+ * program does not waste time creating the same square over and over
+ * again.
  *
  * @author Amol Pant
  */
@@ -25,9 +27,10 @@ final class Square {
      * a3). For convenience, it is in parentheses to make it a
      * group.  This subpattern is intended to be incorporated into
      * other pattern that contain square designations (such as
-     * patterns for moves).
+     * patterns for moves).  It accepts designations for the largest
+     * board size; sq rejects squares that are not on the current board.
      */
-    static final String SQ = "([a-j](?:[1-9]|10))";
+    static final String SQ = "([a-p](?:1[0-6]|[1-9]))";
 
     /**
      * Return my row position, where 0 is the bottom row.
@@ -44,8 +47,8 @@ final class Square {
     }
 
     /**
-     * Return my index position (0-99).  0 represents square a1, and 99
-     * is square j10.
+     * Return my index position (0 to N*N-1 on an NxN board).  0
+     * represents square a1, and 99 is square j10 on the standard board.
      */
     int index() {
         return _index;
@@ -78,7 +81,7 @@ final class Square {
             {0, -1}, {-1, -1}, {-1, 0}, {-1, 1}
     };
 
-    /**x
+    /**
      * Return the Square that is STEPS>0 squares away from me in direction
      * DIR, or null if there is no such square.
      * DIR = 0 for north, 1 for northeast, 2 for east, etc., up to 7 for
@@ -89,17 +92,20 @@ final class Square {
         if ((dir < 0) || (dir > 7)) {
             return null;
         }
-        int xCol = DIR[dir][0] * steps;
-        int yRow = DIR[dir][1] * steps;
-        if (((this.col() + xCol) < 0)
-                || ((this.col() + xCol) >= Board.SIZE)
-                || ((this.row() + yRow) < 0)
-                || ((this.row() + yRow) >= Board.SIZE)) {
+        int[] ray = _rays[dir];
+        if (steps <= 0 || steps > ray.length) {
             return null;
         }
-        Square moved = sq(this.col() + xCol, this.row() + yRow);
-        assert isQueenMove(moved);
-        return moved;
+        return _squares[ray[steps - 1]];
+    }
+
+    /**
+     * Return the indices of the squares along the ray from me in
+     * direction DIR (as for queenMove), nearest first, up to the edge of
+     * the board.  The result is shared and must not be modified.
+     */
+    int[] ray(int dir) {
+        return _rays[dir];
     }
 
     /**
@@ -152,24 +158,25 @@ final class Square {
      * Return true iff COL ROW is a legal square.
      */
     static boolean exists(int col, int row) {
-        return row >= 0 && col >= 0 && row < Board.SIZE && col < Board.SIZE;
+        return row >= 0 && col >= 0
+            && row < Board.size() && col < Board.size();
     }
 
     /**
      * Return the (unique) Square denoting COL ROW.
      */
     static Square sq(int col, int row) {
-        if (!exists(row, col)) {
+        if (!exists(col, row)) {
             throw error("row or column out of bounds");
         }
-        return sq((10 * row) + col);
+        return sq((Board.size() * row) + col);
     }
 
     /**
      * Return the (unique) Square denoting the position with index INDEX.
      */
     static Square sq(int index) {
-        return SQUARES[index];
+        return _squares[index];
     }
 
     /**
@@ -189,17 +196,14 @@ final class Square {
      */
     static Square sq(String posn) {
         assert posn.matches(SQ);
-        char column = posn.charAt(0);
-        char rower = posn.charAt(1);
-        return sq(Character.toString(column),
-                Character.toString(rower));
+        return sq(posn.substring(0, 1), posn.substring(1));
     }
 
     /**
      * Return an iterator over all Squares.
      */
     static Iterator<Square> iterator() {
-        return SQUARE_LIST.iterator();
+        return _squareList.iterator();
     }
 
     /**
@@ -207,8 +211,8 @@ final class Square {
      */
     private Square(int index) {
         _index = index;
-        _row = index / 10;
-        _col = index % 10;
+        _row = index / Board.size();
+        _col = index % Board.size();
         String row = Integer.toString(_row + 1);
         String column = Integer.toString(_col);
         char columnChar = (char) ('a' + _col);
@@ -217,20 +221,55 @@ final class Square {
     }
 
     /**
-     * The cache of all created squares, by index.
+     * Switch to the Squares for boards with SIZE squares on a side,
+     * creating them if needed.  Called by Board.setSize.
      */
-    private static final Square[] SQUARES =
-            new Square[Board.SIZE * Board.SIZE];
+    static void setSize(int size) {
+        if (SQUARES[size] == null) {
+            Square[] squares = new Square[size * size];
+            for (int i = squares.length - 1; i >= 0; i -= 1) {
+                squares[i] = new Square(i);
+            }
+            int[] buf = new int[size];
+            for (Square s : squares) {
+                for (int dir = 0; dir < DIR.length; dir += 1) {
+                    int n = 0;
+                    int col = s._col + DIR[dir][0],
+                        row = s._row + DIR[dir][1];
+                    while (exists(col, row)) {
+                        buf[n] = row * size + col;
+                        n += 1;
+                        col += DIR[dir][0];
+                        row += DIR[dir][1];
+                    }
+                    s._rays[dir] = Arrays.copyOf(buf, n);
+                }
+            }
+            SQUARES[size] = squares;
+        }
+        _squares = SQUARES[size];
+        _squareList = Arrays.asList(_squares);
+    }
 
     /**
-     * SQUARES viewed as a List.
+     * The cache of all created squares: SQUARES[n] holds those for NxN
+     * boards, by index, or is null if they have not been needed.
      */
-    private static final List<Square> SQUARE_LIST = Arrays.asList(SQUARES);
+    private static final Square[][] SQUARES =
+            new Square[Board.MAX_SIZE + 1][];
+
+    /**
+     * The squares for the current board size, by index.
+     */
+    private static Square[] _squares;
+
+    /**
+     * _squares viewed as a List.
+     */
+    private static List<Square> _squareList;
 
     static {
-        for (int i = Board.SIZE * Board.SIZE - 1; i >= 0; i -= 1) {
-            SQUARES[i] = new Square(i);
-        }
+        setSize(Board.size());
     }
 
     /**
@@ -248,4 +287,10 @@ final class Square {
      */
     private final String _str;
 
+    /**
+     * _rays[k] contains the indices of the squares along the ray from me
+     * in direction k, nearest first.
+     */
+    private final int[][] _rays = new int[8][];
+
 }
@@ -2,6 +2,7 @@ package amazons;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
@@ -34,4 +35,20 @@ public class SquareTest {
         assertEquals(square.direction(nw), 7);
         assertEquals(Square.sq(63), Square.sq("d7"));
     }
+
+    @Test
+    public void rayTests() {
+        Square square = Square.sq(54);
+        assertArrayEquals(new int[] {64, 74, 84, 94}, square.ray(0));
+        assertArrayEquals(new int[] {45, 36, 27, 18, 9}, square.ray(3));
+        assertArrayEquals(new int[] {53, 52, 51, 50}, square.ray(6));
+        assertEquals(0, Square.sq(99).ray(1).length);
+        for (int dir = 0; dir < 8; dir += 1) {
+            int[] ray = square.ray(dir);
+            for (int k = 0; k < ray.length; k += 1) {
+                assertEquals(Square.sq(ray[k]), square.queenMove(dir, k + 1));
+            }
+            assertEquals(null, square.queenMove(dir, ray.length + 1));
+        }
+    }
 }
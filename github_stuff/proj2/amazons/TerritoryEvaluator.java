@@ -0,0 +1,271 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+
+/**
+ * An Evaluator based on territory: which side can reach each empty
+ * square first.  For each side, it finds the queen distance (the least
+ * number of queen moves, ignoring spears to be thrown, in which one of
+ * that side's amazons could reach the square) and the king distance (the
+ * same for one-square moves) of every empty square, by breadth-first
+ * search.
+ *
+ * The value combines
+ * <ul>
+ * <li> queen territory: the number of squares white reaches first by
+ *      queen moves, less the number black reaches first, where a tie
+ *      counts a little in favor of the side to move;
+ * <li> king territory: the same for king distances, which better
+ *      reflects how securely a square is held;
+ * <li> position: for each square, how much nearer it is to one side
+ *      than the other, rewarding the side whose amazons are spread out
+ *      and central;
+ * <li> mobility: the number of squares each side's amazons can move to
+ *      right now, which penalizes amazons that are nearly trapped.
+ * </ul>
+ * Queen territory is what finally decides the game, and it always
+ * counts in full.  The other terms matter while the sides are still in
+ * contact, and are weighted by the phase: the fraction of empty squares
+ * both sides can reach at similar distances, which falls from about 1
+ * in the opening to 0 once the board has split into separate regions.
+ *
+ * Values are in units of 1/UNIT square.
+ *
+ * @author Amol Pant
+ */
+final class TerritoryEvaluator implements Evaluator {
+
+    /**
+     * My name.
+     */
+    static final String NAME = "territory";
+
+    @Override
+    public int evaluate(Board board) {
+        int n = Board.size() * Board.size();
+        if (_queue.length != n) {
+            _queue = new int[n];
+            _contents = new Piece[n];
+            for (int s = 0; s < 2; s += 1) {
+                _queenDist[s] = new int[n];
+                _kingDist[s] = new int[n];
+            }
+        }
+        for (int sq = 0; sq < n; sq += 1) {
+            _contents[sq] = board.get(sq);
+        }
+        int empty = board.numEmpty();
+        int mobility = 0;
+        for (int s = 0; s < 2; s += 1) {
+            Piece side = s == 0 ? WHITE : BLACK;
+            int sign = s == 0 ? 1 : -1;
+            mobility += sign * distances(side, empty, true, _queenDist[s]);
+            distances(side, empty, false, _kingDist[s]);
+        }
+        int tempo = tempo(board.turn());
+        int queenTerritory = 0, kingTerritory = 0, position = 0;
+        int contact = 0;
+        for (int sq = 0; sq < n; sq += 1) {
+            if (_contents[sq] != EMPTY) {
+                continue;
+            }
+            int qw = _queenDist[0][sq], qb = _queenDist[1][sq];
+            int kw = _kingDist[0][sq], kb = _kingDist[1][sq];
+            queenTerritory += owner(qw, qb, tempo);
+            kingTerritory += owner(kw, kb, tempo);
+            position += position(qw, qb, kw, kb);
+            contact += contact(qw, qb);
+        }
+        return value(queenTerritory, kingTerritory, position, contact,
+                     mobility, empty);
+    }
+
+    /**
+     * Return the value of a position from its terms: the queen and king
+     * territory QUEENTERRITORY and KINGTERRITORY, the position term
+     * POSITION, the sum CONTACT of the contact of each empty square (see
+     * contact), white's mobility less black's MOBILITY, and the number
+     * EMPTY of empty squares.
+     */
+    static int value(int queenTerritory, int kingTerritory, int position,
+                     int contact, int mobility, int empty) {
+        int phase = empty == 0 ? 0 : contact / empty;
+        long contested = (long) kingTerritory + position
+            + MOBILITY * mobility;
+        return queenTerritory + (int) (phase * contested / UNIT);
+    }
+
+    /**
+     * Return the value of a square both sides reach equally soon when
+     * TURN is to move.
+     */
+    static int tempo(Piece turn) {
+        return turn == WHITE ? TEMPO : -TEMPO;
+    }
+
+    @Override
+    public Evaluator create() {
+        return new TerritoryEvaluator();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    /**
+     * Return the contribution to territory of an empty square whose
+     * distances from white and black are WHITEDIST and BLACKDIST, where
+     * TEMPO is the value of a tie.
+     */
+    static int owner(int whiteDist, int blackDist, int tempo) {
+        if (whiteDist < blackDist) {
+            return UNIT;
+        } else if (blackDist < whiteDist) {
+            return -UNIT;
+        } else if (whiteDist == UNREACHED) {
+            return 0;
+        } else {
+            return tempo;
+        }
+    }
+
+    /**
+     * Return the contribution to position of an empty square whose queen
+     * distances from white and black are QW and QB, and whose king
+     * distances are KW and KB.
+     */
+    static int position(int qw, int qb, int kw, int kb) {
+        int lead = Math.max(-KING_SPAN, Math.min(KING_SPAN, kb - kw));
+        return (UNIT >> shift(qw)) - (UNIT >> shift(qb))
+            + lead * UNIT / KING_SPAN;
+    }
+
+    /**
+     * Return the contact of an empty square whose queen distances from
+     * white and black are QW and QB: UNIT if both reach it equally soon,
+     * halving with each move of difference, and 0 if either cannot reach
+     * it.
+     */
+    static int contact(int qw, int qb) {
+        if (qw == UNREACHED || qb == UNREACHED) {
+            return 0;
+        }
+        return UNIT >> shift(Math.abs(qw - qb));
+    }
+
+    /**
+     * Return DIST as a count by which to shift UNIT right to get
+     * UNIT / 2**DIST, using a count that leaves 0 for large DIST.
+     */
+    private static int shift(int dist) {
+        return Math.min(dist, UNIT_BITS + 1);
+    }
+
+    /**
+     * Set DIST[sq] to the distance of each empty square sq in _contents from
+     * the nearest of SIDE's amazons, by queen moves if QUEEN and by king
+     * moves otherwise, or to UNREACHED if no amazon can reach it, and
+     * return the number of queen moves (if QUEEN) or king moves SIDE's
+     * amazons have.  EMPTY is the number of empty squares: once it has
+     * reached them all, the search stops.  A ray is followed only until
+     * it meets a square already reached in fewer moves, since the search
+     * from that square follows the rest of the ray.
+     */
+    private int distances(Piece side, int empty, boolean queen, int[] dist) {
+        Arrays.fill(dist, UNREACHED);
+        int head = 0, tail = 0;
+        for (int sq = 0; sq < dist.length; sq += 1) {
+            if (_contents[sq] == side) {
+                dist[sq] = 0;
+                _queue[tail] = sq;
+                tail += 1;
+            }
+        }
+        int amazons = tail, moves = 0, reached = 0;
+        while (head < tail && (head < amazons || reached < empty)) {
+            int from = _queue[head];
+            int d = dist[from] + 1;
+            Square start = Square.sq(from);
+            for (int dir = 0; dir < 8; dir += 1) {
+                for (int to : start.ray(dir)) {
+                    if (_contents[to] != EMPTY) {
+                        break;
+                    }
+                    if (head < amazons) {
+                        moves += 1;
+                    }
+                    if (dist[to] == UNREACHED) {
+                        dist[to] = d;
+                        _queue[tail] = to;
+                        tail += 1;
+                        reached += 1;
+                    } else if (dist[to] < d) {
+                        break;
+                    }
+                    if (!queen) {
+                        break;
+                    }
+                }
+            }
+            head += 1;
+        }
+        return moves;
+    }
+
+    /**
+     * Log2 of UNIT.
+     */
+    private static final int UNIT_BITS = 6;
+
+    /**
+     * The value of one square of territory.
+     */
+    private static final int UNIT = 1 << UNIT_BITS;
+
+    /**
+     * The value of a square both sides reach equally soon, to the side to
+     * move.
+     */
+    private static final int TEMPO = UNIT / 4;
+
+    /**
+     * The difference in king distances at which a square counts fully
+     * towards position.
+     */
+    private static final int KING_SPAN = 6;
+
+    /**
+     * The weight of one move's worth of mobility.
+     */
+    private static final int MOBILITY = UNIT / 8;
+
+    /**
+     * The distance of a square no amazon can reach.
+     */
+    static final int UNREACHED = Integer.MAX_VALUE / 2;
+
+    /**
+     * The contents of each square of the position being evaluated.
+     */
+    private Piece[] _contents;
+
+    /**
+     * Queue of squares for the breadth-first searches.
+     */
+    private int[] _queue = new int[0];
+
+    /**
+     * _queenDist[0] and _queenDist[1] are queen distances for white and
+     * black.
+     */
+    private final int[][] _queenDist = new int[2][];
+
+    /**
+     * _kingDist[0] and _kingDist[1] are king distances for white and
+     * black.
+     */
+    private final int[][] _kingDist = new int[2][];
+}
@@ -0,0 +1,791 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+import static amazons.TerritoryEvaluator.UNREACHED;
+
+/**
+ * The queen and king distances (see TerritoryEvaluator) of every empty
+ * square of a Board from each side's amazons, and the sums over empty
+ * squares of the per-square terms of TerritoryEvaluator, kept up to date
+ * incrementally as moves are made and undone.  A Board maintains one of
+ * these only on request (see Board.trackTerritory).
+ *
+ * A move changes the contents of only three squares, and distances
+ * change only for squares whose shortest paths ran through them, or that
+ * can now be reached through the square the amazon left.  An update
+ * rechecks just the squares on the rays through the changed squares,
+ * and follows the changes outwards only as far as distances actually
+ * change.  Updates are lazy: makeMove only records the move, and the
+ * distances are brought up to date when next asked for, so a move that
+ * is undone before anything is asked costs nothing.  Each update logs the
+ * values it overwrites, and undoing an applied move restores them.
+ *
+ * @author Amol Pant
+ */
+final class TerritoryMap {
+
+    /**
+     * A map describing the current position of BOARD.
+     */
+    TerritoryMap(Board board) {
+        rebuild(board);
+    }
+
+    /**
+     * A copy of MODEL.
+     */
+    TerritoryMap(TerritoryMap model) {
+        _contents = model._contents.clone();
+        _dist = new int[FIELDS][];
+        for (int f = 0; f < FIELDS; f += 1) {
+            _dist[f] = model._dist[f].clone();
+        }
+        System.arraycopy(model._totals, 0, _totals, 0, TOTALS);
+        _log = Arrays.copyOf(model._log, model._log.length);
+        _logSize = model._logSize;
+        _marks = model._marks.clone();
+        _savedTotals = model._savedTotals.clone();
+        _applied = model._applied;
+        _pending = model._pending.clone();
+        _pendingCount = model._pendingCount;
+        allocateScratch(_contents.length);
+    }
+
+    /**
+     * Recompute everything from scratch from the position on BOARD,
+     * forgetting all moves made before.
+     */
+    void rebuild(Board board) {
+        int n = Board.size() * Board.size();
+        _contents = new Piece[n];
+        _dist = new int[FIELDS][n];
+        for (int sq = 0; sq < n; sq += 1) {
+            _contents[sq] = board.get(sq);
+        }
+        allocateScratch(n);
+        for (int f = 0; f < FIELDS; f += 1) {
+            Arrays.fill(_dist[f], UNREACHED);
+            _seedCount = 0;
+            for (int sq = 0; sq < n; sq += 1) {
+                if (_contents[sq] == side(f)) {
+                    _dist[f][sq] = 0;
+                    addSeed(0, sq);
+                }
+            }
+            relax(f, false);
+        }
+        _logSize = 0;
+        _applied = 0;
+        _pendingCount = 0;
+        Arrays.fill(_totals, 0);
+        for (int sq = 0; sq < n; sq += 1) {
+            addContribution(sq, 1);
+        }
+    }
+
+    /**
+     * Update to reflect the move whose packed form is MOVE, which has just
+     * been made.
+     */
+    void makeMove(int move) {
+        if (_pendingCount == _pending.length) {
+            _pending = Arrays.copyOf(_pending, 2 * _pending.length);
+        }
+        _pending[_pendingCount] = move;
+        _pendingCount += 1;
+    }
+
+    /**
+     * Update to reflect undoing the last move made.  Returns false, having
+     * done nothing, if that move was made before I was last rebuilt, in
+     * which case I must be rebuilt again.
+     */
+    boolean undo() {
+        if (_pendingCount > 0) {
+            _pendingCount -= 1;
+            return true;
+        } else if (_applied == 0) {
+            return false;
+        }
+        _applied -= 1;
+        int n = _contents.length;
+        for (int mark = _marks[_applied]; _logSize > mark; ) {
+            _logSize -= 1;
+            long entry = _log[_logSize];
+            int where = (int) (entry >>> 32), old = (int) entry;
+            if (where >= FIELDS * n) {
+                _contents[where - FIELDS * n] = PIECES[old];
+            } else {
+                _dist[where / n][where % n] = old;
+            }
+        }
+        System.arraycopy(_savedTotals, TOTALS * _applied, _totals, 0,
+                         TOTALS);
+        return true;
+    }
+
+    /**
+     * Return the queen territory of the current position, counting each
+     * square both sides reach equally soon as 0 (see queenTies).
+     */
+    int queenTerritory() {
+        update();
+        return _totals[QUEEN_TERRITORY];
+    }
+
+    /**
+     * Return the number of empty squares both sides reach by queen moves,
+     * equally soon.
+     */
+    int queenTies() {
+        update();
+        return _totals[QUEEN_TIES];
+    }
+
+    /**
+     * Return the king territory of the current position, counting ties
+     * as 0 (see kingTies).
+     */
+    int kingTerritory() {
+        update();
+        return _totals[KING_TERRITORY];
+    }
+
+    /**
+     * Return the number of empty squares both sides reach by king moves,
+     * equally soon.
+     */
+    int kingTies() {
+        update();
+        return _totals[KING_TIES];
+    }
+
+    /**
+     * Return the position term of the current position.
+     */
+    int position() {
+        update();
+        return _totals[POSITION];
+    }
+
+    /**
+     * Return the total contact of the empty squares of the current
+     * position.
+     */
+    int contact() {
+        update();
+        return _totals[CONTACT];
+    }
+
+    /**
+     * Return the queen distance of the square with index SQ from SIDE's
+     * amazons: 0 for SIDE's amazons themselves, and UNREACHED for other
+     * occupied squares and for empty squares SIDE cannot reach.
+     */
+    int queenDistance(Piece side, int sq) {
+        update();
+        return _dist[QUEEN + (side == WHITE ? 0 : 1)][sq];
+    }
+
+    /**
+     * Return the king distance of the square with index SQ from SIDE's
+     * amazons, as for queenDistance.
+     */
+    int kingDistance(Piece side, int sq) {
+        update();
+        return _dist[KING + (side == WHITE ? 0 : 1)][sq];
+    }
+
+    /**
+     * Apply all pending moves.
+     */
+    private void update() {
+        for (int k = 0; k < _pendingCount; k += 1) {
+            apply(_pending[k]);
+        }
+        _pendingCount = 0;
+    }
+
+    /**
+     * Update the distances and totals for the move whose packed form is
+     * MOVE.  First blocks the three squares the move changes one at a
+     * time, the amazon's square last, which can only lengthen distances,
+     * and then opens the square it left and adds it back at its
+     * destination, which can only shorten them.
+     */
+    private void apply(int move) {
+        if (_applied == _marks.length) {
+            _marks = Arrays.copyOf(_marks, 2 * _marks.length);
+            _savedTotals =
+                Arrays.copyOf(_savedTotals, 2 * _savedTotals.length);
+        }
+        _marks[_applied] = _logSize;
+        System.arraycopy(_totals, 0, _savedTotals, TOTALS * _applied,
+                         TOTALS);
+        _applied += 1;
+        _touchMark += 1;
+        _touchCount = 0;
+
+        int from = Move.from(move), to = Move.to(move),
+            spear = Move.spear(move);
+        Piece side = _contents[from];
+        setContents(to, SPEAR);
+        for (int f = 0; f < FIELDS; f += 1) {
+            block(f, to, true);
+        }
+        if (spear != from) {
+            setContents(spear, SPEAR);
+            for (int f = 0; f < FIELDS; f += 1) {
+                block(f, spear, true);
+            }
+        }
+        setContents(from, SPEAR);
+        for (int f = 0; f < FIELDS; f += 1) {
+            if (side(f) == side) {
+                block(f, from, false);
+            }
+        }
+        if (spear != from) {
+            setContents(from, EMPTY);
+        }
+        setContents(to, side);
+        for (int f = 0; f < FIELDS; f += 1) {
+            open(f, spear != from ? from : -1, side(f) == side ? to : -1);
+        }
+        for (int k = 0; k < _touchCount; k += 1) {
+            addContribution(_touched[k], 1);
+        }
+    }
+
+    /**
+     * Repair field F after square X has become blocked (or ceased to be
+     * a source), where X was empty before iff WASEMPTY.  A square's
+     * distance d is still right if it can be reached in one move from a
+     * square at distance d - 1 whose own distance is still right.  The
+     * only squares that can have lost such a move are the ones next to X
+     * along a ray, which may have been reached from X or through it.
+     * Checks those that were, in order of distance, and the successors
+     * of any square found wrong, and then recomputes the distances of
+     * the wrong ones from the rest.
+     */
+    private void block(int f, int x, boolean wasEmpty) {
+        int[] dist = _dist[f];
+        boolean queen = f < KING;
+        int through = dist[x] + 1;
+        _mark += 1;
+        _seedCount = 0;
+        setDist(f, x, UNREACHED);
+        if (queen && wasEmpty) {
+            for (int dir = 0; dir < 8; dir += 1) {
+                _nearestOnRay[dir] = nearestOnRay(f, x, dir) + 1;
+            }
+        }
+        Square start = Square.sq(x);
+        for (int dir = 0; dir < 8; dir += 1) {
+            int beyond = queen && wasEmpty ? _nearestOnRay[(dir + 4) % 8]
+                : UNREACHED;
+            for (int v : start.ray(dir)) {
+                if (_contents[v] != EMPTY) {
+                    break;
+                }
+                if (dist[v] == through || dist[v] == beyond) {
+                    _candidate[v] = _mark;
+                    addSeed(dist[v], v);
+                }
+                if (!queen) {
+                    break;
+                }
+            }
+        }
+        _invalidCount = 0;
+        startQueue();
+        for (int e = pop(); e >= 0; e = pop()) {
+            int v = e & SQ_MASK, d = e >>> KEY_SHIFT;
+            if (supported(f, v, d)) {
+                continue;
+            }
+            _invalid[v] = _mark;
+            _invalidList[_invalidCount] = v;
+            _invalidCount += 1;
+            setDist(f, v, UNREACHED);
+            int m = visible(f, v);
+            for (int i = 0; i < m; i += 1) {
+                int w = _seen[i];
+                if (_contents[w] == EMPTY && dist[w] == d + 1
+                    && _candidate[w] != _mark) {
+                    _candidate[w] = _mark;
+                    enqueue(d + 1, w);
+                }
+            }
+        }
+        _seedCount = 0;
+        for (int k = 0; k < _invalidCount; k += 1) {
+            int v = _invalidList[k];
+            int best = nearest(f, v);
+            if (best != UNREACHED) {
+                setDist(f, v, best);
+                addSeed(best, v);
+            }
+        }
+        relax(f, true);
+    }
+
+    /**
+     * Repair field F after square OPENED (if >= 0) has become empty and
+     * square SOURCE (if >= 0) has become a source, both of which can
+     * only shorten distances.  Relaxes outwards from SOURCE, from OPENED,
+     * and, in queen fields, from the squares on each ray from OPENED
+     * that can now be reached through it from the opposite ray.
+     */
+    private void open(int f, int opened, int source) {
+        int[] dist = _dist[f];
+        _mark += 1;
+        _seedCount = 0;
+        if (source >= 0) {
+            setDist(f, source, 0);
+            addSeed(0, source);
+        }
+        if (opened >= 0) {
+            int best = nearest(f, opened);
+            if (best != UNREACHED) {
+                setDist(f, opened, best);
+                addSeed(best, opened);
+            }
+            if (f < KING) {
+                for (int dir = 0; dir < 8; dir += 1) {
+                    _nearestOnRay[dir] = nearestOnRay(f, opened, dir);
+                }
+                Square start = Square.sq(opened);
+                for (int dir = 0; dir < 8; dir += 1) {
+                    int near = _nearestOnRay[(dir + 4) % 8];
+                    if (near == UNREACHED) {
+                        continue;
+                    }
+                    for (int w : start.ray(dir)) {
+                        if (_contents[w] != EMPTY) {
+                            break;
+                        }
+                        if (dist[w] > near + 1) {
+                            setDist(f, w, near + 1);
+                            addSeed(near + 1, w);
+                        }
+                    }
+                }
+            }
+        }
+        relax(f, false);
+    }
+
+    /**
+     * Return the least distance in queen field F of the squares from
+     * which a queen move in direction DIR + 4 could pass over SQ: the
+     * empty squares along the ray from SQ in direction DIR, and the
+     * source (if any) that ends it.  Returns UNREACHED if there are none
+     * or none is reached.
+     */
+    private int nearestOnRay(int f, int sq, int dir) {
+        int[] dist = _dist[f];
+        Piece side = side(f);
+        int best = UNREACHED;
+        for (int t : Square.sq(sq).ray(dir)) {
+            Piece p = _contents[t];
+            if (p == EMPTY || p == side) {
+                best = Math.min(best, dist[t]);
+            }
+            if (p != EMPTY) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Lower distances in field F by breadth-first search from the seeds,
+     * which must hold squares with their current distances.  Only lowers
+     * the distances of squares marked invalid if ONLYINVALID.
+     */
+    private void relax(int f, boolean onlyInvalid) {
+        int[] dist = _dist[f];
+        startQueue();
+        for (int e = pop(); e >= 0; e = pop()) {
+            int u = e & SQ_MASK, d = e >>> KEY_SHIFT;
+            if (dist[u] != d) {
+                continue;
+            }
+            int m = visible(f, u);
+            for (int i = 0; i < m; i += 1) {
+                int w = _seen[i];
+                if (_contents[w] == EMPTY && dist[w] > d + 1
+                    && (!onlyInvalid || _invalid[w] == _mark)) {
+                    setDist(f, w, d + 1);
+                    enqueue(d + 1, w);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return true iff the empty square V, at distance D in field F, can
+     * be reached in one move from a square at distance D - 1.
+     */
+    private boolean supported(int f, int v, int d) {
+        int[] dist = _dist[f];
+        Piece side = side(f);
+        boolean queen = f < KING;
+        Square start = Square.sq(v);
+        for (int dir = 0; dir < 8; dir += 1) {
+            for (int t : start.ray(dir)) {
+                Piece p = _contents[t];
+                if ((p == EMPTY || p == side) && dist[t] == d - 1) {
+                    return true;
+                }
+                if (p != EMPTY || !queen) {
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return one more than the least distance in field F of the squares
+     * from which empty square V can be reached in one move, or UNREACHED
+     * if none is reached.
+     */
+    private int nearest(int f, int v) {
+        int[] dist = _dist[f];
+        int best = UNREACHED;
+        int m = visible(f, v);
+        for (int i = 0; i < m; i += 1) {
+            if (dist[_seen[i]] != UNREACHED) {
+                best = Math.min(best, dist[_seen[i]] + 1);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Store in _seen the squares one move away from SQ in field F (a
+     * queen move for queen fields, a king move for king fields): the
+     * empty squares so reached, plus any of the field's sources that end
+     * the rays.  Return their number.
+     */
+    private int visible(int f, int sq) {
+        Piece side = side(f);
+        boolean queen = f < KING;
+        Square start = Square.sq(sq);
+        int m = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            for (int t : start.ray(dir)) {
+                Piece p = _contents[t];
+                if (p == EMPTY || p == side) {
+                    _seen[m] = t;
+                    m += 1;
+                }
+                if (p != EMPTY || !queen) {
+                    break;
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Add a seed with distance D for square SQ.
+     */
+    private void addSeed(int d, int sq) {
+        if (_seedCount == _seeds.length) {
+            _seeds = Arrays.copyOf(_seeds, 2 * _seeds.length);
+        }
+        _seeds[_seedCount] = d << KEY_SHIFT | sq;
+        _seedCount += 1;
+    }
+
+    /**
+     * Prepare to pop the seeds in order of distance, followed by
+     * anything enqueued.
+     */
+    private void startQueue() {
+        Arrays.sort(_seeds, 0, _seedCount);
+        _seedNext = 0;
+        _queueHead = _queueTail = 0;
+    }
+
+    /**
+     * Enqueue square SQ with distance D, which must be at least that of
+     * any entry popped so far.
+     */
+    private void enqueue(int d, int sq) {
+        if (_queueTail == _queue.length) {
+            _queue = Arrays.copyOf(_queue, 2 * _queue.length);
+        }
+        _queue[_queueTail] = d << KEY_SHIFT | sq;
+        _queueTail += 1;
+    }
+
+    /**
+     * Return the remaining seed or queue entry with the least distance
+     * (packed as distance << KEY_SHIFT | square), removing it, or -1 if
+     * there are none.  Since the queue only receives distances no less
+     * than those already popped, merging it with the sorted seeds gives
+     * all entries in order.
+     */
+    private int pop() {
+        if (_queueHead < _queueTail
+            && (_seedNext == _seedCount
+                || _queue[_queueHead] < _seeds[_seedNext])) {
+            _queueHead += 1;
+            return _queue[_queueHead - 1];
+        } else if (_seedNext < _seedCount) {
+            _seedNext += 1;
+            return _seeds[_seedNext - 1];
+        }
+        return -1;
+    }
+
+    /**
+     * Set the distance of SQ in field F to D, logging the old value.
+     */
+    private void setDist(int f, int sq, int d) {
+        if (_dist[f][sq] != d) {
+            touch(sq);
+            log(f * _contents.length + sq, _dist[f][sq]);
+            _dist[f][sq] = d;
+        }
+    }
+
+    /**
+     * Set the contents of SQ to P, logging the old contents.
+     */
+    private void setContents(int sq, Piece p) {
+        if (_contents[sq] != p) {
+            touch(sq);
+            log(FIELDS * _contents.length + sq, _contents[sq].ordinal());
+            _contents[sq] = p;
+        }
+    }
+
+    /**
+     * Record that the value at WHERE (see setDist and setContents) was
+     * OLD.
+     */
+    private void log(int where, int old) {
+        if (_logSize == _log.length) {
+            _log = Arrays.copyOf(_log, 2 * _log.length);
+        }
+        _log[_logSize] = (long) where << 32 | (old & 0xffffffffL);
+        _logSize += 1;
+    }
+
+    /**
+     * Note that SQ is about to change in the current update, removing its
+     * contribution from the totals the first time.  apply adds the
+     * contributions of all touched squares back at the end.
+     */
+    private void touch(int sq) {
+        if (_touchedMark[sq] != _touchMark) {
+            _touchedMark[sq] = _touchMark;
+            _touched[_touchCount] = sq;
+            _touchCount += 1;
+            addContribution(sq, -1);
+        }
+    }
+
+    /**
+     * Add SIGN times the contribution of SQ to the totals.
+     */
+    private void addContribution(int sq, int sign) {
+        if (_contents[sq] != EMPTY) {
+            return;
+        }
+        int qw = _dist[QUEEN][sq], qb = _dist[QUEEN + 1][sq];
+        int kw = _dist[KING][sq], kb = _dist[KING + 1][sq];
+        _totals[QUEEN_TERRITORY] +=
+            sign * TerritoryEvaluator.owner(qw, qb, 0);
+        _totals[KING_TERRITORY] +=
+            sign * TerritoryEvaluator.owner(kw, kb, 0);
+        if (qw == qb && qw != UNREACHED) {
+            _totals[QUEEN_TIES] += sign;
+        }
+        if (kw == kb && kw != UNREACHED) {
+            _totals[KING_TIES] += sign;
+        }
+        _totals[POSITION] += sign * TerritoryEvaluator.position(qw, qb, kw, kb);
+        _totals[CONTACT] += sign * TerritoryEvaluator.contact(qw, qb);
+    }
+
+    /**
+     * Allocate the scratch arrays for a board of N squares.
+     */
+    private void allocateScratch(int n) {
+        _seen = new int[8 * Board.MAX_SIZE];
+        _candidate = new int[n];
+        _invalid = new int[n];
+        _invalidList = new int[n];
+        _touchedMark = new int[n];
+        _touched = new int[n];
+        _mark = _touchMark = 0;
+    }
+
+    /**
+     * Return the side whose amazons are the sources of field F.
+     */
+    private static Piece side(int f) {
+        return f % 2 == 0 ? WHITE : BLACK;
+    }
+
+    /**
+     * The first of the queen fields (white, then black) in _dist.
+     */
+    private static final int QUEEN = 0;
+    /**
+     * The first of the king fields (white, then black) in _dist.
+     */
+    private static final int KING = 2;
+    /**
+     * The number of distance fields.
+     */
+    private static final int FIELDS = 4;
+
+    /**
+     * Indices in _totals.
+     */
+    private static final int QUEEN_TERRITORY = 0, QUEEN_TIES = 1,
+        KING_TERRITORY = 2, KING_TIES = 3, POSITION = 4, CONTACT = 5;
+    /**
+     * The number of totals.
+     */
+    private static final int TOTALS = 6;
+
+    /**
+     * Queue entries hold a distance shifted left this much, plus a
+     * square index.
+     */
+    private static final int KEY_SHIFT = 16;
+    /**
+     * The mask for the square index in a queue entry.
+     */
+    private static final int SQ_MASK = (1 << KEY_SHIFT) - 1;
+
+    /**
+     * The initial size of the growable arrays.
+     */
+    private static final int INITIAL_SIZE = 64;
+
+    /**
+     * All pieces, by ordinal.
+     */
+    private static final Piece[] PIECES = Piece.values();
+
+    /**
+     * My copy of the board contents, by square index.
+     */
+    private Piece[] _contents;
+    /**
+     * _dist[f][sq] is the distance of square sq in field f (QUEEN or
+     * KING, plus 0 for white and 1 for black).
+     */
+    private int[][] _dist;
+    /**
+     * The sums of the per-square terms over the empty squares.
+     */
+    private final int[] _totals = new int[TOTALS];
+
+    /**
+     * The undo log: each entry holds a location (f * n + sq for
+     * _dist[f][sq], FIELDS * n + sq for _contents[sq], where n is the
+     * number of squares) in its upper half and the old value there in its
+     * lower half.
+     */
+    private long[] _log = new long[INITIAL_SIZE];
+    /**
+     * The number of entries in _log.
+     */
+    private int _logSize;
+    /**
+     * _marks[k] is the size of _log before the kth applied move.
+     */
+    private int[] _marks = new int[INITIAL_SIZE];
+    /**
+     * The totals before each applied move, TOTALS per move.
+     */
+    private int[] _savedTotals = new int[TOTALS * INITIAL_SIZE];
+    /**
+     * The number of applied moves that can be undone.
+     */
+    private int _applied;
+    /**
+     * Moves made but not yet applied, oldest first.
+     */
+    private int[] _pending = new int[INITIAL_SIZE];
+    /**
+     * The number of pending moves.
+     */
+    private int _pendingCount;
+
+    /**
+     * Scratch space for the squares one move from a square (see
+     * visible).
+     */
+    private int[] _seen;
+    /**
+     * Scratch space for the results of nearestOnRay in each direction.
+     */
+    private final int[] _nearestOnRay = new int[8];
+    /**
+     * Starting entries for the queue, sorted by startQueue.
+     */
+    private int[] _seeds = new int[INITIAL_SIZE];
+    /**
+     * The number of seeds, and the index of the next to pop.
+     */
+    private int _seedCount, _seedNext;
+    /**
+     * Entries added while popping, in nondecreasing order of distance.
+     */
+    private int[] _queue = new int[INITIAL_SIZE];
+    /**
+     * The indices of the next entry to pop from _queue and of the end.
+     */
+    private int _queueHead, _queueTail;
+    /**
+     * The current mark for _candidate and _invalid, changed for each
+     * field repaired.
+     */
+    private int _mark;
+    /**
+     * _candidate[sq] == _mark iff sq has been queued for checking.
+     */
+    private int[] _candidate;
+    /**
+     * _invalid[sq] == _mark iff sq's distance was found wrong.
+     */
+    private int[] _invalid;
+    /**
+     * The squares found wrong.
+     */
+    private int[] _invalidList;
+    /**
+     * The number of entries in _invalidList.
+     */
+    private int _invalidCount;
+    /**
+     * The current mark for _touchedMark, changed for each move applied.
+     */
+    private int _touchMark;
+    /**
+     * _touchedMark[sq] == _touchMark iff sq has changed in the current
+     * move.
+     */
+    private int[] _touchedMark;
+    /**
+     * The squares changed by the current move.
+     */
+    private int[] _touched;
+    /**
+     * The number of entries in _touched.
+     */
+    private int _touchCount;
+}
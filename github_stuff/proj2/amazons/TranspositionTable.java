@@ -0,0 +1,211 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Utils.error;
+
+/**
+ * A fixed-size table of search results, indexed by position keys (see
+ * Board.key).  Each entry records the depth to which a position was
+ * searched, the kind of bound the resulting score gives, the score, and
+ * the best move found.  Entries are packed into a long[], two longs per
+ * entry: a data word and the data word XORed with the key.  A reader
+ * accepts an entry only if the two words are consistent with the key it
+ * is looking for, so that the table needs no locks even if several
+ * threads use it at once: an entry torn by simultaneous writes simply
+ * appears to be missing.
+ *
+ * The table is organized in buckets of two entries.  The first entry of
+ * each bucket is replaced only by results from searches at least as deep
+ * (or by results for the same position), so that expensive results
+ * survive.  The second entry is always replaced, so that results from
+ * recent searches still find a place once the first entries fill up with
+ * results from earlier moves.
+ *
+ * @author Amol Pant
+ */
+final class TranspositionTable {
+
+    /**
+     * Bound type of a score that is exact.
+     */
+    static final int EXACT = 1;
+    /**
+     * Bound type of a score that is a lower bound on the true score.
+     */
+    static final int LOWER = 2;
+    /**
+     * Bound type of a score that is an upper bound on the true score.
+     */
+    static final int UPPER = 3;
+
+    /**
+     * The move recorded in entries that have no best move.
+     */
+    static final int NO_MOVE = -1;
+
+    /**
+     * The largest depth recorded.  Deeper results are recorded as having
+     * this depth, which understates, and so never overstates, their
+     * reliability.
+     */
+    static final int MAX_DEPTH = 63;
+
+    /**
+     * A table with 2**BITS entries.  BITS must be at least 1.
+     */
+    TranspositionTable(int bits) {
+        if (bits < 1 || bits > MAX_BITS) {
+            throw error("bad table size: %d", bits);
+        }
+        _table = new long[2 << bits];
+        _mask = (1 << (bits - 1)) - 1;
+    }
+
+    /**
+     * Return the number of entries in this table.
+     */
+    int size() {
+        return _table.length / 2;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    void clear() {
+        Arrays.fill(_table, 0);
+    }
+
+    /**
+     * Return the packed entry for the position with key KEY, or 0 if
+     * there is none.  The parts of the result are extracted with depth,
+     * bound, score, and move.
+     */
+    long probe(long key) {
+        int i = index(key);
+        for (int k = 0; k < 2 * WORDS; k += WORDS) {
+            long data = _table[i + k + 1];
+            if ((_table[i + k] ^ data) == key && bound(data) != 0) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Record that the position with key KEY was searched to DEPTH,
+     * giving score SCORE, which is a bound of type BOUND (EXACT, LOWER,
+     * or UPPER), and best move MOVE (in packed form, as for Move.pack,
+     * or NO_MOVE).
+     */
+    void store(long key, int depth, int bound, int score, int move) {
+        depth = Math.min(depth, MAX_DEPTH);
+        long data = pack(depth, bound, score, move);
+        int i = index(key);
+        long old = _table[i + 1];
+        if ((_table[i] ^ old) == key || depth(old) <= depth
+            || bound(old) == 0) {
+            _table[i] = key ^ data;
+            _table[i + 1] = data;
+        } else {
+            _table[i + WORDS] = key ^ data;
+            _table[i + WORDS + 1] = data;
+        }
+    }
+
+    /**
+     * Return the search depth recorded in packed entry ENTRY.
+     */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+
+    /**
+     * Return the bound type (EXACT, LOWER, or UPPER) recorded in packed
+     * entry ENTRY.
+     */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /**
+     * Return the score recorded in packed entry ENTRY.
+     */
+    static int score(long entry) {
+        return (int) (entry >>> SCORE_SHIFT);
+    }
+
+    /**
+     * Return the best move (in packed form) recorded in packed entry
+     * ENTRY, or NO_MOVE if there is none.
+     */
+    static int move(long entry) {
+        int move = (int) entry & MOVE_MASK;
+        return move == MOVE_MASK ? NO_MOVE : move;
+    }
+
+    /**
+     * Return the packed entry for DEPTH, BOUND, SCORE, and MOVE.
+     */
+    private static long pack(int depth, int bound, int score, int move) {
+        return (move & MOVE_MASK)
+            | ((long) depth << DEPTH_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) score << SCORE_SHIFT);
+    }
+
+    /**
+     * Return the index in _table of the bucket for KEY.
+     */
+    private int index(long key) {
+        return ((int) (key ^ (key >>> 32)) & _mask) * 2 * WORDS;
+    }
+
+    /**
+     * Number of bits of a packed move (see Move.pack).
+     */
+    private static final int MOVE_BITS = 24;
+    /**
+     * Mask for the move in a packed entry.  A move field with all bits
+     * set denotes NO_MOVE; this is not the packing of any legal move,
+     * whose from and to squares differ.
+     */
+    private static final int MOVE_MASK = (1 << MOVE_BITS) - 1;
+    /**
+     * Number of bits used for the depth: enough for MAX_DEPTH.
+     */
+    private static final int DEPTH_BITS = 6;
+    /**
+     * Position of the depth in a packed entry.
+     */
+    private static final int DEPTH_SHIFT = MOVE_BITS;
+    /**
+     * Position of the bound type in a packed entry.
+     */
+    private static final int BOUND_SHIFT = DEPTH_SHIFT + DEPTH_BITS;
+    /**
+     * Mask for the bound type, once shifted into place.
+     */
+    private static final int BOUND_MASK = 3;
+    /**
+     * Position of the score in a packed entry.
+     */
+    private static final int SCORE_SHIFT = 32;
+    /**
+     * Number of longs per entry.
+     */
+    private static final int WORDS = 2;
+    /**
+     * The largest permitted log2 of the number of entries.
+     */
+    private static final int MAX_BITS = 28;
+
+    /**
+     * The entries: bucket b occupies _table[4b .. 4b+3].
+     */
+    private final long[] _table;
+    /**
+     * Mask selecting a bucket number from a hash of a key.
+     */
+    private final int _mask;
+}
@@ -0,0 +1,57 @@
+package amazons;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import static amazons.TranspositionTable.*;
+
+/**
+ * Tests of the TranspositionTable class.
+ *
+ * @author Amol Pant
+ */
+public class TranspositionTableTest {
+
+    @Test
+    public void storeProbeTests() {
+        TranspositionTable table = new TranspositionTable(4);
+        assertEquals(16, table.size());
+        long key = 0x123456789ABCDEFL;
+        assertEquals(0, table.probe(key));
+        int move = Move.pack(3, 63, 93);
+        table.store(key, 5, LOWER, -1234567, move);
+        long entry = table.probe(key);
+        assertEquals(5, depth(entry));
+        assertEquals(LOWER, bound(entry));
+        assertEquals(-1234567, score(entry));
+        assertEquals(move, move(entry));
+        assertEquals(0, table.probe(key ^ 1L << 40));
+        table.store(key, 2, EXACT, Integer.MAX_VALUE - 1, NO_MOVE);
+        entry = table.probe(key);
+        assertEquals(EXACT, bound(entry));
+        assertEquals(Integer.MAX_VALUE - 1, score(entry));
+        assertEquals(NO_MOVE, move(entry));
+        table.store(key, 100, UPPER, 0, move);
+        assertEquals(MAX_DEPTH, depth(table.probe(key)));
+        table.clear();
+        assertEquals(0, table.probe(key));
+    }
+
+    @Test
+    public void replacementTests() {
+        TranspositionTable table = new TranspositionTable(1);
+        long deep = 1L << 40, shallow = 2L << 40, recent = 3L << 40;
+        table.store(deep, 8, EXACT, 1, NO_MOVE);
+        table.store(shallow, 3, EXACT, 2, NO_MOVE);
+        assertEquals(1, score(table.probe(deep)));
+        assertEquals(2, score(table.probe(shallow)));
+        table.store(recent, 4, EXACT, 3, NO_MOVE);
+        assertEquals(1, score(table.probe(deep)));
+        assertEquals(0, table.probe(shallow));
+        assertEquals(3, score(table.probe(recent)));
+        table.store(shallow, 9, EXACT, 4, NO_MOVE);
+        assertEquals(0, table.probe(deep));
+        assertEquals(4, score(table.probe(shallow)));
+    }
+}
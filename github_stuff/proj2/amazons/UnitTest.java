@@ -23,7 +23,9 @@ public class UnitTest {
      */
     public static void main(String[] ignored) {
         textui.runClasses(UnitTest.class, SquareTest.class,
-                BoardTest.class, IteratorTests.class);
+                BoardTest.class, IteratorTests.class,
+                TranspositionTableTest.class, SearchTest.class,
+                EvaluatorTest.class);
     }
 
     /**